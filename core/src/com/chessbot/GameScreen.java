@@ -7,8 +7,11 @@ import com.badlogic.gdx.utils.ScreenUtils;
 import engine.*;
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class GameScreen implements Screen {
+    // moves shown by Multi-PV analysis
+    private static final int ANALYSIS_LINES = 3;
     private final ChessGame game;
     private final RenderedBoard board;
     private boolean whiteBot;
@@ -18,8 +21,12 @@ public class GameScreen implements Screen {
     private final float displayedRowSpacing;
     private Move testingMove = null;
     private boolean firstFrame = true;
-    private boolean planningFrame = false;
-    private boolean testingFrame = false;
+    private List<Move> analysis = null;
+    /* searches run on threads of their own so rendering carries on; at most
+       one at a time, and the board isn't changed until it's done */
+    private SearchJob moveJob = null;
+    private SearchJob analysisJob = null;
+    private SearchJob testingJob = null;
 
     public GameScreen(ChessGame game, RenderedBoard board, boolean whiteBot,
                       boolean blackBot, boolean invert, boolean training) {
@@ -29,13 +36,14 @@ public class GameScreen implements Screen {
         this.blackBot = blackBot;
         this.invert = invert;
         this.training = training;
-        Node.setTraining(training);
+        Node.newGame();
+        board.startClock();
         displayedRowSpacing = training ? 0.029f :0.035f;
     }
 
     @Override
     public void render(float delta) {
-        refreshDisplay(false);
+        refreshDisplay(runningJob() != null);
 
         // ensure board is rendered before computer starts thinking
         if (firstFrame) {
@@ -45,7 +53,9 @@ public class GameScreen implements Screen {
 
         // allow move take-back
         if (training && Gdx.input.isKeyJustPressed(Input.Keys.Z)) {
+            cancelSearches();
             testingMove = null;
+            analysis = null;
             board.undoLastMove();
             if (whiteBot ^ blackBot) board.undoLastMove();
         }
@@ -63,26 +73,43 @@ public class GameScreen implements Screen {
         }
         // restart game
         if (Gdx.input.isKeyJustPressed(Input.Keys.BACKSPACE)) {
+            cancelSearches();
+            board.stopPondering();
             game.setScreen(new MenuScreen(game));
             dispose();
             return;
         }
         if (board.gameFinished()) return;
-        // computer's turn (or someone pressed A to automate their next move)
-        if ((board.getNextTurn() == Side.WHITE && whiteBot) ||
-            (board.getNextTurn() == Side.BLACK && blackBot) ||
-            (training && Gdx.input.isKeyJustPressed(Input.Keys.A)) ||
-            planningFrame) {
-            // ensures we print "thinking" to the screen before planning move
-            if (!planningFrame) {
-                planningFrame = true;
-                refreshDisplay(true);
-                return;
-            }
-            planningFrame = false;
-            board.computeAndMakeMove();
+
+        // collect whichever search has finished, on this thread
+        if (moveJob != null && moveJob.isDone()) {
+            board.finishComputingMove(moveJob);
+            moveJob = null;
             testingMove = null;
-            refreshDisplay(false);
+            analysis = null;
+            // think on the human's time
+            resumePondering();
+        } else if (analysisJob != null && analysisJob.isDone()) {
+            analysis = analysisJob.getBestMoves();
+            analysisJob = null;
+            resumePondering();
+        } else if (testingJob != null && testingJob.isDone()) {
+            testingMove.finishAnalysis(testingJob);
+            testingJob = null;
+            resumePondering();
+        }
+        if (runningJob() != null) return;
+
+        // analyse the best few moves for the side to move
+        if (training && Gdx.input.isKeyJustPressed(Input.Keys.M)) {
+            board.stopPondering();
+            analysisJob = board.startSearch(new TimeManager(), ANALYSIS_LINES);
+            return;
+        }
+        // computer's turn (or someone pressed A to automate their next move)
+        if (isBot(board.getNextTurn()) ||
+            (training && Gdx.input.isKeyJustPressed(Input.Keys.A))) {
+            moveJob = board.startComputingMove();
         } else if (Gdx.input.isButtonJustPressed(Input.Buttons.LEFT)) {
             Square clickedSquare = getClickedSquare();
             Move clickedMove = null;
@@ -92,23 +119,48 @@ public class GameScreen implements Screen {
             if (clickedMove != null) {
                 board.finaliseMove(clickedMove);
                 testingMove = null;
-                refreshDisplay(false);
+                analysis = null;
             }
         } else if ((training && Gdx.input.isButtonJustPressed(Input.Buttons.RIGHT))) {
             Square clickedSquare = getClickedSquare();
             if (clickedSquare != null) {
                 testingMove = board.processRightClick(clickedSquare);
                 if (testingMove != null) {
-                    refreshDisplay(true);
-                    testingFrame = true;
+                    board.stopPondering();
+                    testingJob = testingMove.startAnalysis();
                 }
             }
-        } else if (testingFrame) {
-            testingFrame = false;
-            testingMove.analyse();
         }
     }
 
+    /* analysis stops pondering, as both would search on every core; it
+       starts again afterwards if the human is still to move */
+    private void resumePondering() {
+        if (!isBot(board.getNextTurn()) && !board.gameFinished()) {
+            board.startPondering();
+        }
+    }
+
+    private SearchJob runningJob() {
+        if (moveJob != null) return moveJob;
+        if (analysisJob != null) return analysisJob;
+        return testingJob;
+    }
+
+    private void cancelSearches() {
+        SearchJob job = runningJob();
+        if (job != null) {
+            job.cancel();
+        }
+        moveJob = null;
+        analysisJob = null;
+        testingJob = null;
+    }
+
+    private boolean isBot(Side side) {
+        return side == Side.WHITE ? whiteBot : blackBot;
+    }
+
     private Square getClickedSquare() {
         int row = Gdx.input.getY() * 8 / game.getViewport().getScreenHeight();
         int col = (int) (
@@ -150,6 +202,19 @@ public class GameScreen implements Screen {
         }
         game.drawText(delimiter, col, yCoordForText(row++));
 
+        // display the best moves found by analysis, with their sequences
+        if (analysis != null && !thinking) {
+            game.drawText("Best moves:", col, yCoordForText(row++));
+            for (int i = 0; i < analysis.size(); i++) {
+                Move move = analysis.get(i);
+                game.drawText(String.format("%d. %s", i + 1, move),
+                        col, yCoordForText(row++));
+                game.drawText("    " + move.continuation(),
+                        col, yCoordForText(row++));
+            }
+            game.drawText(delimiter, col, yCoordForText(row++));
+        }
+
         // display cost stats of last move scored
         Move relevantMove = null;
         if (testingMove != null && testingMove.getEvaluationTracker() != null) {
@@ -179,11 +244,19 @@ public class GameScreen implements Screen {
             game.drawText(delimiter, col, yCoordForText(row++));
         }
 
-        // display final message, or "Thinking..."
+        // display final message, or "Thinking..." with the search so far
         if (board.gameFinished()) {
             game.drawText(board.getEndOfGameMessage(), col, yCoordForText(row));
         } else if (thinking) {
-            game.drawText("Thinking...", col, yCoordForText(row++));
+            SearchJob job = runningJob();
+            game.drawText(String.format("Thinking... depth %d", job.getDepth()),
+                    col, yCoordForText(row++));
+            Move progress = job.getProgress();
+            if (progress != null) {
+                game.drawText(progress.toString(), col, yCoordForText(row++));
+                game.drawText("    " + progress.continuation(),
+                        col, yCoordForText(row++));
+            }
         }
 
         game.getBatch().end();
@@ -199,6 +272,7 @@ public class GameScreen implements Screen {
                 if (training) {
                     add("Right-click to analyse move");
                     add("Press Z to take-back a move");
+                    add("Press M to analyse the best moves");
                     add("Press A to use the bot for your move");
                     add("Press W to toggle WHITE bot");
                     add("Press L to toggle BLACK bot");
@@ -219,9 +293,21 @@ public class GameScreen implements Screen {
             add(String.format("Turn:            %3d", displayedTurn));
             add(String.format("Half-move clock: %3d", board.getHalfmoveClock()));
             add(String.format("Zobrist hash: %s",board.zobristTracker.getVal()));
+            GameClock clock = board.getClock();
+            if (clock != null) {
+                add(String.format("White clock: %s",
+                        clockTime(clock.getRemaining(Side.WHITE))));
+                add(String.format("Black clock: %s",
+                        clockTime(clock.getRemaining(Side.BLACK))));
+            }
         }};
     }
 
+    private static String clockTime(long millis) {
+        long seconds = Math.max(millis, 0) / 1000;
+        return String.format("%d:%02d", seconds / 60, seconds % 60);
+    }
+
     private float yCoordForText(int row) {
         return ChessGame.HEIGHT * (0.98f - displayedRowSpacing * row);
     }
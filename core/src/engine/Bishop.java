@@ -1,10 +1,8 @@
 package engine;
 
-import java.util.ArrayList;
-
 public class Bishop extends Piece {
     private static final int value = 3;
-    private static final int pieceIndex = 2;
+    private static final int pieceIndex = BISHOP;
 
     public Bishop(Side side, int row, int col, boolean unmoved, Board board) {
         super(side, value, pieceIndex, row, col, unmoved, board);
@@ -31,8 +29,9 @@ public class Bishop extends Piece {
     }
 
     @Override
-    public ArrayList<Move> getValidMoves() {
-        return getValidDiagonalMoves();
+    public int generateMoves(int[] moves, int count) {
+        return addMovesTo(SlidingAttacks.bishopAttacks(
+                square().index(), board.getOccupied()), moves, count);
     }
 
     @Override
@@ -0,0 +1,140 @@
+package engine;
+
+/* Static helpers for the 64-bit square sets kept by Board. Bit i of a
+   bitboard is the square at row i / 8, col i % 8, using the same row/col
+   orientation as Square (row 0 is black's back rank) */
+public final class Bitboard {
+    public static final long[] FILES = new long[Board.SIZE];
+    public static final long[] ROWS = new long[Board.SIZE];
+    public static final long[] KNIGHT_ATTACKS = new long[64];
+    public static final long[] KING_ATTACKS = new long[64];
+    // indexed by side ordinal, then the square the pawn stands on
+    public static final long[][] PAWN_ATTACKS = new long[2][64];
+    // squares strictly between two squares on a shared line, otherwise empty
+    private static final long[][] BETWEEN = new long[64][64];
+
+    static {
+        for (int i = 0; i < Board.SIZE; i++) {
+            for (int j = 0; j < Board.SIZE; j++) {
+                FILES[j] |= bit(i, j);
+                ROWS[i] |= bit(i, j);
+            }
+        }
+        int[] knightRows = new int[]{2,  2, 1,  1, -1, -1, -2, -2};
+        int[] knightCols = new int[]{1, -1, 2, -2,  2, -2,  1, -1};
+        for (int square = 0; square < 64; square++) {
+            int row = row(square);
+            int col = col(square);
+            for (int i = 0; i < knightRows.length; i++) {
+                KNIGHT_ATTACKS[square] |=
+                        bitIfOnBoard(row + knightRows[i], col + knightCols[i]);
+            }
+            for (int i = -1; i <= 1; i++) {
+                for (int j = -1; j <= 1; j++) {
+                    if (i != 0 || j != 0) {
+                        KING_ATTACKS[square] |= bitIfOnBoard(row + i, col + j);
+                    }
+                }
+            }
+            // white pawns move towards row 0, black pawns towards row 7
+            PAWN_ATTACKS[Side.WHITE.ordinal()][square] =
+                    bitIfOnBoard(row - 1, col - 1) | bitIfOnBoard(row - 1, col + 1);
+            PAWN_ATTACKS[Side.BLACK.ordinal()][square] =
+                    bitIfOnBoard(row + 1, col - 1) | bitIfOnBoard(row + 1, col + 1);
+            for (int rowStep = -1; rowStep <= 1; rowStep++) {
+                for (int colStep = -1; colStep <= 1; colStep++) {
+                    if (rowStep != 0 || colStep != 0) {
+                        fillBetween(square, rowStep, colStep);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void fillBetween(int square, int rowStep, int colStep) {
+        long between = 0;
+        int row = row(square) + rowStep;
+        int col = col(square) + colStep;
+        while (0 <= row && row <= 7 && 0 <= col && col <= 7) {
+            BETWEEN[square][index(row, col)] = between;
+            between |= bit(row, col);
+            row += rowStep;
+            col += colStep;
+        }
+    }
+
+    private Bitboard() {}
+
+    public static int index(int row, int col) {
+        return row * Board.SIZE + col;
+    }
+
+    public static int row(int index) {
+        return index >>> 3;
+    }
+
+    public static int col(int index) {
+        return index & 7;
+    }
+
+    public static long bit(int index) {
+        return 1L << index;
+    }
+
+    public static long bit(int row, int col) {
+        return 1L << index(row, col);
+    }
+
+    public static long bit(Square square) {
+        return 1L << index(square.row, square.col);
+    }
+
+    private static long bitIfOnBoard(int row, int col) {
+        if (0 <= row && row <= 7 && 0 <= col && col <= 7) {
+            return bit(row, col);
+        }
+        return 0;
+    }
+
+    // index of the lowest set bit, used to iterate over a bitboard
+    public static int first(long bitboard) {
+        return Long.numberOfTrailingZeros(bitboard);
+    }
+
+    public static int count(long bitboard) {
+        return Long.bitCount(bitboard);
+    }
+
+    public static long between(int from, int to) {
+        return BETWEEN[from][to];
+    }
+
+    // reference ray-walking attacks, SlidingAttacks has the fast lookups
+    public static long rookAttacks(int square, long occupied) {
+        return slide(square, occupied, 1, 0) | slide(square, occupied, -1, 0) |
+               slide(square, occupied, 0, 1) | slide(square, occupied, 0, -1);
+    }
+
+    public static long bishopAttacks(int square, long occupied) {
+        return slide(square, occupied, 1, 1) | slide(square, occupied, 1, -1) |
+               slide(square, occupied, -1, 1) | slide(square, occupied, -1, -1);
+    }
+
+    // all squares reachable in one direction, including the first blocker
+    private static long slide(int square, long occupied, int rowStep,
+                              int colStep) {
+        long attacks = 0;
+        int row = row(square) + rowStep;
+        int col = col(square) + colStep;
+        while (0 <= row && row <= 7 && 0 <= col && col <= 7) {
+            long bit = bit(row, col);
+            attacks |= bit;
+            if ((occupied & bit) != 0) {
+                break;
+            }
+            row += rowStep;
+            col += colStep;
+        }
+        return attacks;
+    }
+}
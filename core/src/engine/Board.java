@@ -1,26 +1,67 @@
 package engine;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.stream.Collectors;
 
 public class Board {
     public static final int SIZE = 8;
+    public static final String STANDARD_SETUP =
+            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    // piece values for exchanges, by piece index; a King can't be traded
+    private static final int[] EXCHANGE_VALUES = new int[]{100, 9, 3, 3, 5, 1};
+    // least valuable first, the order pieces join an exchange in
+    private static final int[] EXCHANGE_ORDER = new int[]{
+            Piece.PAWN, Piece.KNIGHT, Piece.BISHOP,
+            Piece.ROOK, Piece.QUEEN, Piece.KING};
     protected int numBlack = 0;
     protected int numWhite = 0;
     protected Piece[] whitePieces;
     protected Piece[] blackPieces;
     private final Piece[][] contents = new Piece[SIZE][SIZE];
+    // bitboards mirror 'contents', kept in sync by setContents
+    private final long[][] pieceBitboards = new long[2][Piece.NUM_TYPES];
+    private final long[] sideBitboards = new long[2];
+    private long occupied = 0;
+    // bumped whenever 'contents' changes, so cached masks can be invalidated
+    private int positionVersion = 0;
+    // check and pin masks for one side, see legalTargets
+    private int masksVersion = -1;
+    private Side masksSide;
+    private long checkMask;
+    private long pinned;
+    private final long[] pinRays = new long[64];
     public final ArrayList<Move> moveHistory = new ArrayList<>();
     private King whiteKing;
     private King blackKing;
     protected Side nextTurn = Side.WHITE;
     protected int halfmoveClock = 0;
     protected int fullmoveNumber = 1;
+    // square behind a pawn that has just moved two squares, otherwise -1
+    protected int enPassantSquare = -1;
+    // number of moves made in the game so far
+    protected int plyCount = 0;
+    // what undoMove needs to restore, one entry per move made on this board
+    private Piece[] movedStack = new Piece[64];
+    private Piece[] takenStack = new Piece[64];
+    private int[] stateStack = new int[64];
+    private int undoDepth = 0;
+    // hash of the position before each move made, from the initial setup
+    private long[] keyHistory = new long[64];
+    private int keyCount = 0;
+    // scratch space for isLegal
+    private final int[] pieceMoves = new int[PackedMove.MAX_MOVES];
+    // gain after each capture of the exchange being evaluated
+    private final int[] exchangeGains = new int[33];
     public final ZobristTracker zobristTracker = new ZobristTracker(this);
 
     public Board() {}
 
+    public Board(String fen) {
+        initialise(fen);
+        zobristTracker.recompute();
+    }
+
     // copy constructor: duplicates true state before lookahead
     public Board(Board board) {
         whitePieces = new Piece[board.whitePieces.length];
@@ -36,6 +77,11 @@ public class Board {
         nextTurn = board.nextTurn;
         halfmoveClock = board.halfmoveClock;
         fullmoveNumber = board.fullmoveNumber;
+        enPassantSquare = board.enPassantSquare;
+        plyCount = board.plyCount;
+        keyHistory = Arrays.copyOf(board.keyHistory, board.keyHistory.length);
+        keyCount = board.keyCount;
+        zobristTracker.recompute();
     }
 
     private void deepCopy(Piece[] pieces) {
@@ -50,45 +96,594 @@ public class Board {
         }
     }
 
-    public ArrayList<Move> getAllValidMoves() {
-        return new ArrayList<Move>(40) {{
-            for (Piece piece : getPieces(nextTurn)) {
-                if (!piece.hasBeenTaken()) {
-                    addAll(piece.getValidMoves());
+    private void initialise(String fen) {
+        String[] fenComponents = fen.split(" ");
+        String[] boardRows = fenComponents[0].split("/");
+        int charInRow;
+        ArrayList<Piece> whitePieces = new ArrayList<>(16);
+        ArrayList<Piece> blackPieces = new ArrayList<>(16);
+        for (int row = 0; row < SIZE; row++) {
+            charInRow = 0;
+            for (int col = 0; col < SIZE; col++) {
+                char currentChar = boardRows[row].charAt(charInRow);
+                if (Character.isDigit(currentChar)) {
+                    col += Character.getNumericValue(currentChar) - 1;
+                } else {
+                    Side pieceSide = (Character.isUpperCase(currentChar)) ?
+                            Side.WHITE : Side.BLACK;
+                    String pieceType = Character
+                            .toString(currentChar)
+                            .toLowerCase();
+                    switch (pieceType) {
+                        case "k":
+                            King newKing;
+                            if (pieceSide == Side.WHITE) {
+                                newKing = new King(Side.WHITE, row, col, this);
+                                whitePieces.add(newKing);
+                                setWhiteKing(newKing);
+                            } else {
+                                newKing = new King(Side.BLACK, row, col, this);
+                                blackPieces.add(newKing);
+                                setBlackKing(newKing);
+                            }
+                            break;
+                        case "q":
+                            if (pieceSide == Side.WHITE) {
+                                whitePieces.add(new Queen(
+                                        Side.WHITE, row, col, true, this
+                                ));
+                            } else {
+                                blackPieces.add(new Queen(
+                                        Side.BLACK, row, col, true, this
+                                ));
+                            }
+                            break;
+                        case "r":
+                            if (pieceSide == Side.WHITE) {
+                                whitePieces.add(new Rook(Side.WHITE, row, col, this));
+                            } else {
+                                blackPieces.add(new Rook(Side.BLACK, row, col, this));
+                            }
+                            break;
+                        case "b":
+                            if (pieceSide == Side.WHITE) {
+                                whitePieces.add(new Bishop(
+                                        Side.WHITE, row, col, true, this
+                                ));
+                            } else {
+                                blackPieces.add(new Bishop(
+                                        Side.BLACK, row, col, true, this
+                                ));
+                            }
+                            break;
+                        case "n":
+                            if (pieceSide == Side.WHITE) {
+                                whitePieces.add(new Knight(
+                                        Side.WHITE, row, col, true, this
+                                ));
+                            } else {
+                                blackPieces.add(new Knight(
+                                        Side.BLACK, row, col, true, this
+                                ));
+                            }
+                            break;
+                        case "p":
+                            if (pieceSide == Side.WHITE) {
+                                whitePieces.add(new Pawn(Side.WHITE, row, col, this));
+                            } else {
+                                blackPieces.add(new Pawn(Side.BLACK, row, col, this));
+                            }
+                            break;
+                        default:
+                            assert false : "bad fen ; "+ pieceType + " invalid";
+                            break;
+                    }
                 }
+                charInRow++;
+            }
+        }
+        this.whitePieces = new Piece[whitePieces.size()];
+        this.blackPieces = new Piece[blackPieces.size()];
+        for (int i = 0; i < whitePieces.size(); i++) {
+            this.whitePieces[i] = whitePieces.get(i);
+        }
+        for (int i = 0; i < blackPieces.size(); i++) {
+            this.blackPieces[i] = blackPieces.get(i);
+        }
+        nextTurn = (fenComponents[1].equals("w")) ? Side.WHITE : Side.BLACK;
+        // what castling is allowed
+        if (!fenComponents[2].contains("K")) {
+            if (contentsAt(7, 7) instanceof Rook) {
+                contentsAt(7, 7).setUnmoved(false);
+            }
+        } else {
+            assert contentsAt(7, 7) instanceof Rook;
+            assert contentsAt(7, 4) instanceof King;
+            assert contentsAt(7, 7).isUnmoved();
+            assert contentsAt(7, 4).isUnmoved();
+        }
+        if (!fenComponents[2].contains("Q")) {
+            if (contentsAt(7, 0) instanceof Rook) {
+                contentsAt(7, 0).setUnmoved(false);
+            }
+        } else {
+            assert contentsAt(7, 0) instanceof Rook;
+            assert contentsAt(7, 4) instanceof King;
+            assert contentsAt(7, 0).isUnmoved();
+            assert contentsAt(7, 4).isUnmoved();
+        }
+        if (!fenComponents[2].contains("k")) {
+            if (contentsAt(0, 7) instanceof Rook) {
+                contentsAt(0, 7).setUnmoved(false);
+            }
+        } else {
+            assert contentsAt(0, 7) instanceof Rook;
+            assert contentsAt(0, 4) instanceof King;
+            assert contentsAt(0, 7).isUnmoved();
+            assert contentsAt(0, 4).isUnmoved();
+        }
+        if (!fenComponents[2].contains("q")) {
+            if (contentsAt(0, 0) instanceof Rook) {
+                contentsAt(0, 0).setUnmoved(false);
             }
-        }};
+        } else {
+            assert contentsAt(0, 0) instanceof Rook;
+            assert contentsAt(0, 4) instanceof King;
+            assert contentsAt(0, 0).isUnmoved();
+            assert contentsAt(0, 4).isUnmoved();
+        }
+        if (!fenComponents[3].equals("-")) {
+            // previous move was a pawn moving two squares past this square
+            int col = fenComponents[3].charAt(0) - 'a';
+            int row = 8 - Character.getNumericValue(fenComponents[3].charAt(1));
+            enPassantSquare = Bitboard.index(row, col);
+        }
+        halfmoveClock = Integer.parseInt(fenComponents[4]);
+        fullmoveNumber = Integer.parseInt(fenComponents[5]);
+        assert toFen().equals(fen) :
+                "\nResulting fen: " + fen +
+                        "\nExpected fen:  " + toFen();
     }
 
-    public ArrayList<Move> getInterestingMoves() {
-        return getAllValidMoves().stream()
-                .filter(Move::isInteresting)
-                .collect(Collectors.toCollection(ArrayList::new));
+    public ArrayList<Move> getAllValidMoves() {
+        int[] moves = new int[PackedMove.MAX_MOVES];
+        int count = generateMoves(moves, 0);
+        ArrayList<Move> validMoves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            validMoves.add(Move.unpack(this, moves[i]));
+        }
+        return validMoves;
     }
 
-    public Move computeMove() {
-        System.out.println("Computing move:");
-        Node rootNode = new Node(this);
-        Move bestMove = new Scorer(rootNode).getBestMove();
-        bestMove.printAnticipatedSequence();
-        return bestMove;
+    // fills 'moves' with every legal move from index 'start', returns the end
+    public int generateMoves(int[] moves, int start) {
+        int count = start;
+        for (Piece piece : getPieces(nextTurn)) {
+            if (!piece.hasBeenTaken()) {
+                count = piece.generateMoves(moves, count);
+            }
+        }
+        return count;
     }
 
-    public boolean isInCheck(Side side) {
-        for (Piece piece : getPieces(side.opponent())) {
-            if (!piece.hasBeenTaken() && piece.isChecking()) {
+    // as above, but only captures and promotions
+    public int generateInterestingMoves(int[] moves, int start) {
+        int end = generateMoves(moves, start);
+        int count = start;
+        for (int i = start; i < end; i++) {
+            if (isInteresting(moves[i])) {
+                moves[count++] = moves[i];
+            }
+        }
+        return count;
+    }
+
+    /* whether a move from elsewhere, e.g. the transposition table, can be
+       made in this position; only the moving piece's moves are generated */
+    public boolean isLegal(int move) {
+        Piece piece = contentsAt(Square.at(PackedMove.from(move)));
+        if (piece == null || piece.side != nextTurn) {
+            return false;
+        }
+        int numMoves = piece.generateMoves(pieceMoves, 0);
+        for (int i = 0; i < numMoves; i++) {
+            if (pieceMoves[i] == move) {
                 return true;
             }
         }
         return false;
     }
 
-    public boolean wouldBeInCheck(Move move, Side side) {
+    public boolean isInteresting(int move) {
+        return PackedMove.type(move) == PackedMove.PROMOTION ||
+                capturedBy(move) != null;
+    }
+
+    // the piece this move would take, if any
+    public Piece capturedBy(int move) {
+        int to = PackedMove.to(move);
+        if (PackedMove.type(move) == PackedMove.EN_PASSANT) {
+            return contentsAt(
+                    Bitboard.row(PackedMove.from(move)), Bitboard.col(to));
+        }
+        return contentsAt(Bitboard.row(to), Bitboard.col(to));
+    }
+
+    public void makeMove(int move) {
+        int to = PackedMove.to(move);
+        int type = PackedMove.type(move);
+        Piece piece = contentsAt(Square.at(PackedMove.from(move)));
+        Piece taken = capturedBy(move);
+        assert piece != null && piece.side == nextTurn : PackedMove.toString(move);
+        pushKey();
+        pushUndoState(piece, taken);
+        if (taken != null) {
+            taken.setTaken(true);
+            decrementNumPieces(taken.side);
+            zobristTracker.update(taken.square(), taken);
+            setContents(taken.square(), null);
+        }
+        zobristTracker.update(piece.square(), piece);
+        setContents(piece.square(), null);
+        int rowDiff = Math.abs(piece.square().row - Bitboard.row(to));
+        piece.setSquare(Square.at(to));
+        piece.setUnmoved(false);
+        Piece placed = piece;
+        if (type == PackedMove.PROMOTION) {
+            placed = ((Pawn) piece).promotedTo(PackedMove.promotionIndex(move));
+            placed.setSquare(Square.at(to));
+            getPieces(piece.side)[piece.arrayIndex] = placed;
+        } else if (type == PackedMove.CASTLE) {
+            moveCastlingRook(to, true);
+            ((King) piece).setHasCastled(true);
+        }
+        setContents(Square.at(to), placed);
+        zobristTracker.update(Square.at(to), placed);
+        if (piece instanceof Pawn && rowDiff == 2) {
+            enPassantSquare = (PackedMove.from(move) + to) / 2;
+        } else {
+            enPassantSquare = -1;
+        }
+        if (piece instanceof Pawn || taken != null) {
+            halfmoveClock = 0;
+        } else {
+            halfmoveClock++;
+        }
+        if (nextTurn == Side.BLACK) {
+            fullmoveNumber++;
+        }
+        plyCount++;
+        updateNextTurn();
+        zobristTracker.updateTurn();
+    }
+
+    // must be passed the last move made
+    public void undoMove(int move) {
+        keyCount--;
+        undoDepth--;
+        Piece piece = movedStack[undoDepth];
+        Piece taken = takenStack[undoDepth];
+        int state = stateStack[undoDepth];
+        zobristTracker.updateTurn();
+        updateNextTurn();
+        plyCount--;
+        if (nextTurn == Side.BLACK) {
+            fullmoveNumber--;
+        }
+        halfmoveClock = state & 0xFFFF;
+        enPassantSquare = ((state >>> 16) & 0x7F) - 1;
+        Square to = Square.at(PackedMove.to(move));
+        Piece placed = contentsAt(to);
+        zobristTracker.update(to, placed);
+        setContents(to, null);
+        if (PackedMove.type(move) == PackedMove.PROMOTION) {
+            getPieces(piece.side)[piece.arrayIndex] = piece;
+        } else if (PackedMove.type(move) == PackedMove.CASTLE) {
+            moveCastlingRook(to.index(), false);
+            ((King) piece).setHasCastled(false);
+        }
+        piece.setSquare(Square.at(PackedMove.from(move)));
+        piece.setUnmoved((state & (1 << 23)) != 0);
+        setContents(piece.square(), piece);
+        zobristTracker.update(piece.square(), piece);
+        if (taken != null) {
+            setContents(taken.square(), taken);
+            taken.setTaken(false);
+            incrementNumPieces(taken.side);
+            zobristTracker.update(taken.square(), taken);
+        }
+    }
+
+    /* passes the turn without moving, for null-move pruning. No real Move
+       exists for this, so it must be undone by undoNullMove */
+    public void makeNullMove() {
+        pushUndoState(null, null);
+        enPassantSquare = -1;
+        // passing isn't a real move, so positions before it can't be
+        // repeated through it
+        halfmoveClock = 0;
+        if (nextTurn == Side.BLACK) {
+            fullmoveNumber++;
+        }
+        plyCount++;
+        updateNextTurn();
+        zobristTracker.updateTurn();
+    }
+
+    public void undoNullMove() {
+        undoDepth--;
+        int state = stateStack[undoDepth];
+        zobristTracker.updateTurn();
+        updateNextTurn();
+        plyCount--;
+        if (nextTurn == Side.BLACK) {
+            fullmoveNumber--;
+        }
+        halfmoveClock = state & 0xFFFF;
+        enPassantSquare = ((state >>> 16) & 0x7F) - 1;
+    }
+
+    // whether a side has anything besides its King and pawns
+    public boolean hasNonPawnMaterial(Side side) {
+        return (getOccupancy(side) & ~getBitboard(side, Piece.PAWN) &
+                ~getBitboard(side, Piece.KING)) != 0;
+    }
+
+    private void pushKey() {
+        if (keyCount == keyHistory.length) {
+            keyHistory = Arrays.copyOf(keyHistory, keyCount * 2);
+        }
+        keyHistory[keyCount++] = zobristTracker.getVal();
+    }
+
+    /* how many times the current position has occurred before. Only as far
+       back as the last capture or pawn move is checked, since no position
+       before one of those can come round again */
+    public int repetitions() {
+        long key = zobristTracker.getVal();
+        int earliest = Math.max(0, keyCount - halfmoveClock);
+        int count = 0;
+        // only positions with the same side to move
+        for (int i = keyCount - 2; i >= earliest; i -= 2) {
+            if (keyHistory[i] == key) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void pushUndoState(Piece piece, Piece taken) {
+        if (undoDepth == stateStack.length) {
+            movedStack = Arrays.copyOf(movedStack, undoDepth * 2);
+            takenStack = Arrays.copyOf(takenStack, undoDepth * 2);
+            stateStack = Arrays.copyOf(stateStack, undoDepth * 2);
+        }
+        movedStack[undoDepth] = piece;
+        takenStack[undoDepth] = taken;
+        stateStack[undoDepth] = halfmoveClock | ((enPassantSquare + 1) << 16) |
+                (piece != null && piece.isUnmoved() ? 1 << 23 : 0);
+        undoDepth++;
+    }
+
+    // the Rook's half of castling, given where the King moves to
+    private void moveCastlingRook(int kingTo, boolean make) {
+        int row = Bitboard.row(kingTo);
+        boolean queenSide = Bitboard.col(kingTo) == 2;
+        Square corner = Square.at(Bitboard.index(row, queenSide ? 0 : 7));
+        Square inside = Square.at(Bitboard.index(row, queenSide ? 3 : 5));
+        Square from = make ? corner : inside;
+        Square to = make ? inside : corner;
+        Piece rook = contentsAt(from);
+        zobristTracker.update(from, rook);
+        zobristTracker.update(to, rook);
+        setContents(from, null);
+        setContents(to, rook);
+        rook.setSquare(to);
+        // the Rook must have been unmoved to castle
+        rook.setUnmoved(!make);
+    }
+
+    // cheap static estimate of how promising a move is, for move ordering
+    public int heuristicScore(int move, long pawnAttackedSquares) {
+        Piece piece = contentsAt(Square.at(PackedMove.from(move)));
+        Piece taken = capturedBy(move);
+        int to = PackedMove.to(move);
+        int heuristic = 0;
+        if (taken != null) {
+            heuristic += taken.value * 10 - piece.value;
+        }
+        if (PackedMove.type(move) == PackedMove.PROMOTION) {
+            Piece promoteTo =
+                    ((Pawn) piece).promotedTo(PackedMove.promotionIndex(move));
+            heuristic += promoteTo.value - 1;
+        }
+        int rowProgress = (piece.side == Side.WHITE) ?
+                piece.square().row - Bitboard.row(to) :
+                Bitboard.row(to) - piece.square().row;
+        if (piece.isUnmoved() && !(piece instanceof King)) {
+            heuristic += rowProgress;
+        }
+        if (piece instanceof Pawn) {
+            heuristic += rowProgress;
+        } else if ((pawnAttackedSquares & Bitboard.bit(to)) != 0) {
+            heuristic -= piece.value;
+        }
+        return heuristic;
+    }
+
+    /* Static exchange evaluation: material won by the side to move, in pawns,
+       if it makes this move and both sides then keep recapturing on the
+       target square with their least valuable piece while that gains them
+       anything. Pieces behind a capturer join in as it leaves the line.
+       Pins and checks are ignored, so it's an estimate for ordering and
+       pruning, not a search */
+    public int staticExchange(int move) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        Piece piece = contentsAt(Square.at(from));
+        Piece taken = capturedBy(move);
+        long remaining = occupied ^ Bitboard.bit(from);
+        exchangeGains[0] = 0;
+        if (taken != null) {
+            exchangeGains[0] = EXCHANGE_VALUES[taken.pieceIndex];
+            remaining &= ~Bitboard.bit(taken.square().index());
+        }
+        // value of the piece now standing on the target square
+        int onTarget = EXCHANGE_VALUES[piece.pieceIndex];
+        if (PackedMove.type(move) == PackedMove.PROMOTION) {
+            onTarget = EXCHANGE_VALUES[PackedMove.promotionIndex(move)];
+            exchangeGains[0] += onTarget - EXCHANGE_VALUES[Piece.PAWN];
+        }
+        int side = nextTurn.opponent().ordinal();
+        int captures = 0;
+        while (true) {
+            long attackers = attackersTo(to, remaining) &
+                    sideBitboards[side] & remaining;
+            int capturer = -1;
+            for (int pieceIndex : EXCHANGE_ORDER) {
+                if ((attackers & pieceBitboards[side][pieceIndex]) != 0) {
+                    capturer = pieceIndex;
+                    break;
+                }
+            }
+            if (capturer == -1) {
+                break;
+            }
+            captures++;
+            // gain for this side if it captures, before any recapture
+            exchangeGains[captures] = onTarget - exchangeGains[captures - 1];
+            long capturers = attackers & pieceBitboards[side][capturer];
+            remaining ^= capturers & -capturers;
+            onTarget = EXCHANGE_VALUES[capturer];
+            side ^= 1;
+        }
+        // each side only captures if that's better than stopping
+        while (captures > 0) {
+            exchangeGains[captures - 1] = -Math.max(
+                    -exchangeGains[captures - 1], exchangeGains[captures]);
+            captures--;
+        }
+        return exchangeGains[0];
+    }
+
+    // pieces of both sides attacking the square, sliding through 'occupied'
+    private long attackersTo(int square, long occupied) {
+        long[] black = pieceBitboards[Side.BLACK.ordinal()];
+        long[] white = pieceBitboards[Side.WHITE.ordinal()];
+        long orthogonal = black[Piece.ROOK] | black[Piece.QUEEN] |
+                white[Piece.ROOK] | white[Piece.QUEEN];
+        long diagonal = black[Piece.BISHOP] | black[Piece.QUEEN] |
+                white[Piece.BISHOP] | white[Piece.QUEEN];
+        return (Bitboard.KNIGHT_ATTACKS[square] &
+                        (black[Piece.KNIGHT] | white[Piece.KNIGHT])) |
+                (Bitboard.KING_ATTACKS[square] &
+                        (black[Piece.KING] | white[Piece.KING])) |
+                // as in isAttacked, pawns attacking from the opposite side
+                (Bitboard.PAWN_ATTACKS[Side.WHITE.ordinal()][square] &
+                        black[Piece.PAWN]) |
+                (Bitboard.PAWN_ATTACKS[Side.BLACK.ordinal()][square] &
+                        white[Piece.PAWN]) |
+                (SlidingAttacks.rookAttacks(square, occupied) & orthogonal) |
+                (SlidingAttacks.bishopAttacks(square, occupied) & diagonal);
+    }
+
+    /* searches a copy of the board on a thread of its own, so that this one
+       can still be read meanwhile, though not changed */
+    public SearchJob startSearch(TimeManager timeManager, int numLines) {
+        Node rootNode = new Node(new Board(this));
+        return new SearchJob(new Scorer(rootNode, timeManager, numLines));
+    }
+
+    public boolean isInCheck(Side side) {
+        return isAttacked(kingIndex(side), side.opponent());
+    }
+
+    // whether any piece of side 'by' attacks the square at this index
+    public boolean isAttacked(int square, Side by) {
+        return isAttacked(square, by, occupied);
+    }
+
+    // as above, but with sliding attacks blocked by the given occupancy
+    public boolean isAttacked(int square, Side by, long occupied) {
+        long[] attackers = pieceBitboards[by.ordinal()];
+        if ((Bitboard.KNIGHT_ATTACKS[square] & attackers[Piece.KNIGHT]) != 0 ||
+                (Bitboard.KING_ATTACKS[square] & attackers[Piece.KING]) != 0 ||
+                // a pawn of the opposing side on this square would attack
+                // exactly the squares that 'by' pawns can attack it from
+                (Bitboard.PAWN_ATTACKS[by.opponent().ordinal()][square] &
+                        attackers[Piece.PAWN]) != 0) {
+            return true;
+        }
+        long orthogonal = attackers[Piece.ROOK] | attackers[Piece.QUEEN];
+        if ((SlidingAttacks.rookAttacks(square, occupied) & orthogonal) != 0) {
+            return true;
+        }
+        long diagonal = attackers[Piece.BISHOP] | attackers[Piece.QUEEN];
+        return (SlidingAttacks.bishopAttacks(square, occupied) & diagonal) != 0;
+    }
+
+    /* Squares a piece other than the King can move to without leaving its
+       King in check: anywhere that blocks or captures a single checker, and
+       only along the pin ray if the piece is pinned. En Passant can uncover
+       two pieces at once, so is still checked by making the move */
+    public long legalTargets(Piece piece) {
+        updateLegalityMasks(piece.side);
+        int square = piece.square().index();
+        if ((pinned & Bitboard.bit(square)) != 0) {
+            return checkMask & pinRays[square];
+        }
+        return checkMask;
+    }
+
+    // computed once per position and side rather than once per move
+    private void updateLegalityMasks(Side side) {
+        if (masksVersion == positionVersion && masksSide == side) {
+            return;
+        }
+        masksVersion = positionVersion;
+        masksSide = side;
+        int king = kingIndex(side);
+        long[] opponent = pieceBitboards[side.opponent().ordinal()];
+        long orthogonal = opponent[Piece.ROOK] | opponent[Piece.QUEEN];
+        long diagonal = opponent[Piece.BISHOP] | opponent[Piece.QUEEN];
+        long checkers = (Bitboard.KNIGHT_ATTACKS[king] & opponent[Piece.KNIGHT]) |
+                (Bitboard.PAWN_ATTACKS[side.ordinal()][king] &
+                        opponent[Piece.PAWN]) |
+                (SlidingAttacks.rookAttacks(king, occupied) & orthogonal) |
+                (SlidingAttacks.bishopAttacks(king, occupied) & diagonal);
+        if (checkers == 0) {
+            checkMask = -1L;
+        } else if (Bitboard.count(checkers) == 1) {
+            int checker = Bitboard.first(checkers);
+            checkMask = checkers | Bitboard.between(king, checker);
+        } else {
+            // double check, only the King can move
+            checkMask = 0;
+        }
+        // opponent sliders that would attack the King if not for blockers
+        long snipers = (SlidingAttacks.rookAttacks(king, 0) & orthogonal) |
+                (SlidingAttacks.bishopAttacks(king, 0) & diagonal);
+        long own = sideBitboards[side.ordinal()];
+        pinned = 0;
+        while (snipers != 0) {
+            int sniper = Bitboard.first(snipers);
+            long between = Bitboard.between(king, sniper);
+            long blockers = between & occupied;
+            if (Bitboard.count(blockers) == 1 && (blockers & own) != 0) {
+                pinned |= blockers;
+                pinRays[Bitboard.first(blockers)] =
+                        between | Bitboard.bit(sniper);
+            }
+            snipers &= snipers - 1;
+        }
+    }
+
+    public boolean wouldBeInCheck(int move, Side side) {
         // simulate move
-        move.make();
+        makeMove(move);
         boolean result = isInCheck(side);
         // reverse move
-        move.undo();
+        undoMove(move);
         return result;
     }
 
@@ -167,13 +762,8 @@ public class Board {
         } else {
             fen.append(" ").append(castlingNotation);
         }
-        Move lastMove = getLastMove();
-        if (lastMove != null && lastMove.piece instanceof Pawn &&
-                lastMove.rowDiff() == 2) {
-            Square intermediateSquare = new Square(
-                    (lastMove.to.row + lastMove.from.row) / 2,
-                    lastMove.from.col);
-            fen.append(" ").append(intermediateSquare);
+        if (enPassantSquare != -1) {
+            fen.append(" ").append(Square.at(enPassantSquare));
         } else {
             fen.append(" -");
         }
@@ -183,21 +773,37 @@ public class Board {
     }
 
     public int evaluate() {
+        return evaluate(0);
+    }
+
+    // as seen 'ply' plies below the root of a search, which matters for mates
+    public int evaluate(int ply) {
         if (noValidMoveExists()) {
             if (isInCheck(nextTurn)) {
-                // reward longer games, encourages quicker checkmate
-                return -Integer.MAX_VALUE + 1 + moveHistory.size();
+                return Score.mated(ply);
             } else {
                 // stalemate
                 return 0;
             }
         }
+        return staticEvaluation();
+    }
+
+    // as evaluate, for a position already known to have a legal move
+    public int staticEvaluation() {
         return oneSidedEval(nextTurn) - oneSidedEval(nextTurn.opponent());
     }
 
     public int oneSidedEval(Side side) {
         int evaluation = 0;
-        boolean[] pawnCols = new boolean[SIZE];
+        // penalise doubled pawns
+        long pawns = getBitboard(side, Piece.PAWN);
+        for (int col = 0; col < SIZE; col++) {
+            int pawnsInCol = Bitboard.count(pawns & Bitboard.FILES[col]);
+            if (pawnsInCol > 1) {
+                evaluation -= 3 * (pawnsInCol - 1);
+            }
+        }
         for (Piece piece : getPieces(side)) {
             if (piece.hasBeenTaken()) {
                 continue;
@@ -206,12 +812,6 @@ public class Board {
             if (piece instanceof Pawn) {
                 // moving from rank 6 to 7 is better than rank 3 to 4, hence pow
                 evaluation += Math.pow(piece.progressFrom0thRank() - 1, 1.5);
-                // penalise doubled pawns
-                if (pawnCols[piece.square().col]) {
-                    evaluation -= 3;
-                } else {
-                    pawnCols[piece.square().col] = true;
-                }
                 if (!piece.isUnmoved()) {
                     evaluation += 1;
                 }
@@ -224,7 +824,7 @@ public class Board {
                 }
             } else {
                 // encourage moving up the board at the start of the game
-                if (moveHistory.size() < 20) {
+                if (plyCount < 20) {
                     evaluation += piece.progressFrom0thRank();
                 }
                 if (!piece.isUnmoved() && piece.progressFrom0thRank() > 0) {
@@ -232,10 +832,13 @@ public class Board {
                 }
             }
         }
-        // if only your king is left, keep away from edges and opponent's king
+        /* if only your king is left, keep away from corners and opponent's
+           king. Mates with a lone King are too deep to search, so these
+           must outweigh the small positional terms above, or the stronger
+           side has no reason to make progress */
         if (numPieces(side) == 1) {
-            evaluation += 3 * getKing(side).distanceFromEdge();
-            evaluation += distanceBetweenKings();
+            evaluation += 10 * getKing(side).distanceFromCorner();
+            evaluation += 4 * distanceBetweenKings();
         }
         return evaluation;
     }
@@ -247,47 +850,16 @@ public class Board {
                whiteKingSquare.colDiff(blackKingSquare);
     }
 
-    public ArrayList<Square> pawnAttackedSquares() {
-        ArrayList<Square> pawnAttackedSquares = new ArrayList<>();
-        int attackedRow;
-        if (nextTurn == Side.WHITE) {
-            for (Piece piece : getPieces(Side.BLACK)) {
-                if (!piece.hasBeenTaken() && piece instanceof Pawn) {
-                    attackedRow = piece.square().row + 1;
-                    if (piece.square().col == 0) {
-                        pawnAttackedSquares.add(new Square(attackedRow, 1));
-                    } else if (piece.square().col == 7) {
-                        pawnAttackedSquares.add(new Square(attackedRow, 6));
-                    } else {
-                        pawnAttackedSquares.add(
-                                new Square(attackedRow, piece.square().col-1)
-                        );
-                        pawnAttackedSquares.add(
-                                new Square(attackedRow, piece.square().col+1)
-                        );
-                    }
-                }
-            }
-        } else {
-            for (Piece piece : getPieces(Side.WHITE)) {
-                if (!piece.hasBeenTaken() && piece instanceof Pawn) {
-                    attackedRow = piece.square().row - 1;
-                    if (piece.square().col == 0) {
-                        pawnAttackedSquares.add(new Square(attackedRow, 1));
-                    } else if (piece.square().col == 7) {
-                        pawnAttackedSquares.add(new Square(attackedRow, 6));
-                    } else {
-                        pawnAttackedSquares.add(
-                                new Square(attackedRow, piece.square().col-1)
-                        );
-                        pawnAttackedSquares.add(
-                                new Square(attackedRow, piece.square().col+1)
-                        );
-                    }
-                }
-            }
+    // squares attacked by the pawns of the side that isn't next to move
+    public long pawnAttackedSquares() {
+        Side opponent = nextTurn.opponent();
+        long pawns = getBitboard(opponent, Piece.PAWN);
+        long attacked = 0;
+        while (pawns != 0) {
+            attacked |= Bitboard.PAWN_ATTACKS[opponent.ordinal()][Bitboard.first(pawns)];
+            pawns &= pawns - 1;
         }
-        return pawnAttackedSquares;
+        return attacked;
     }
 
     public Piece contentsAt(int row, int col) {
@@ -299,9 +871,42 @@ public class Board {
     }
 
     public void setContents(Square square, Piece piece) {
+        long bit = Bitboard.bit(square);
+        Piece replaced = contents[square.row][square.col];
+        if (replaced != null) {
+            pieceBitboards[replaced.side.ordinal()][replaced.pieceIndex] &= ~bit;
+            sideBitboards[replaced.side.ordinal()] &= ~bit;
+        }
+        if (piece != null) {
+            pieceBitboards[piece.side.ordinal()][piece.pieceIndex] |= bit;
+            sideBitboards[piece.side.ordinal()] |= bit;
+        }
+        occupied = sideBitboards[0] | sideBitboards[1];
+        positionVersion++;
         contents[square.row][square.col] = piece;
     }
 
+    public long getBitboard(Side side, int pieceIndex) {
+        return pieceBitboards[side.ordinal()][pieceIndex];
+    }
+
+    // by piece index, only to be read
+    long[] getBitboards(Side side) {
+        return pieceBitboards[side.ordinal()];
+    }
+
+    public long getOccupancy(Side side) {
+        return sideBitboards[side.ordinal()];
+    }
+
+    public long getOccupied() {
+        return occupied;
+    }
+
+    public int kingIndex(Side side) {
+        return Bitboard.first(pieceBitboards[side.ordinal()][Piece.KING]);
+    }
+
     public Move getLastMove() {
         if (moveHistory.size() > 0) {
             return moveHistory.get(moveHistory.size() - 1);
@@ -310,6 +915,14 @@ public class Board {
         }
     }
 
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    public int getPlyCount() {
+        return plyCount;
+    }
+
     public Side getNextTurn() {
         return nextTurn;
     }
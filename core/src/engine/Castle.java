@@ -2,43 +2,10 @@ package engine;
 
 public class Castle extends Move {
 
-    public final PartialMove rookMove;
-
+    // the Rook's half of the move is made by the board
     public Castle(Piece main, Square mainTo) {
-        super(main, mainTo);
-        int rookFromCol = (mainTo.col == 2) ? 0 : 7;
-        int rookToCol   = (mainTo.col == 2) ? 3 : 5;
-        Piece rook = board.contentsAt(mainTo.row, rookFromCol);
-        if (rook != null) {
-            rookMove = new PartialMove(rook, new Square(mainTo.row, rookToCol));
-        } else {
-            rookMove = null;
-        }
-    }
-
-    // Copy  constructor for new board
-    public Castle(Castle castle, Board newBoard) {
-        super(castle, newBoard);
-        this.rookMove = new PartialMove(castle.rookMove, newBoard);
-    }
-
-    @Override
-    public Move makeCopy(Board newBoard) {
-        return new Castle(this, newBoard);
-    }
-
-    @Override
-    public void make() {
-        ((King) piece).setHasCastled(true);
-        rookMove.make();
-        super.make();
-    }
-
-    @Override
-    public void undo() {
-        ((King) piece).setHasCastled(false);
-        rookMove.undo();
-        super.undo();
+        super(main, mainTo, null, PackedMove.encode(
+                main.square().index(), mainTo.index(), PackedMove.CASTLE));
     }
 
     @Override
@@ -0,0 +1,56 @@
+package engine;
+
+import java.util.Arrays;
+
+/* Arguments of the engine's command-line tools, read in order: options
+   first, e.g. --threads n, then positional arguments, and a fen last */
+final class CommandLine {
+    private final String[] args;
+    private int index = 0;
+
+    CommandLine(String[] args) {
+        this.args = args;
+    }
+
+    // whether 'option' comes next, taking it if so
+    boolean option(String option) {
+        if (index < args.length && args[index].equals(option)) {
+            index++;
+            return true;
+        }
+        return false;
+    }
+
+    // the number after --threads if it comes next, else all cores
+    int threads() {
+        if (index + 1 >= args.length || !option("--threads")) {
+            return Scorer.getNumThreads();
+        }
+        int numThreads = Integer.parseInt(next());
+        if (numThreads < 1) {
+            throw new IllegalArgumentException(
+                    "At least one thread is needed, not " + numThreads);
+        }
+        return numThreads;
+    }
+
+    boolean hasNext() {
+        return index < args.length;
+    }
+
+    String next() {
+        return args[index++];
+    }
+
+    String[] rest() {
+        String[] rest = Arrays.copyOfRange(args, index, args.length);
+        index = args.length;
+        return rest;
+    }
+
+    // the rest as a fen, which may arrive as one argument or split on its
+    // spaces; the standard setup if there is nothing left
+    String fen() {
+        return hasNext() ? String.join(" ", rest()) : Board.STANDARD_SETUP;
+    }
+}
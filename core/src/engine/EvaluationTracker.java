@@ -11,6 +11,13 @@ public class EvaluationTracker {
         this.depth = depth;
     }
 
+    // combine the statistics of searches run in parallel
+    public void add(EvaluationTracker other) {
+        leafNodes += other.leafNodes;
+        evaluations += other.evaluations;
+        transpositions += other.transpositions;
+    }
+
     public int getTranspositions() {
         return transpositions;
     }
@@ -0,0 +1,55 @@
+package engine;
+
+/* Time left for each side of a game, which gains a fixed increment with
+   every move made. A side is charged for the time from the end of the
+   previous turn to the end of its own */
+public class GameClock {
+    // the time control for new games, none by default
+    private static long baseMillis = 0;
+    private static long incrementMillis = 0;
+
+    private final long[] remaining = new long[2];
+    private final long increment;
+    private long turnStart;
+
+    public GameClock(long baseMillis, long incrementMillis) {
+        remaining[Side.BLACK.ordinal()] = baseMillis;
+        remaining[Side.WHITE.ordinal()] = baseMillis;
+        this.increment = incrementMillis;
+        turnStart = System.currentTimeMillis();
+    }
+
+    // e.g. five minutes each plus three seconds a move
+    public static void setTimeControl(long baseMillis, long incrementMillis) {
+        if (baseMillis <= 0 || incrementMillis < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "The time control needs a positive base and an increment " +
+                    "of at least 0, not %dms+%dms", baseMillis, incrementMillis));
+        }
+        GameClock.baseMillis = baseMillis;
+        GameClock.incrementMillis = incrementMillis;
+    }
+
+    // a clock for a new game, or null when moves are timed individually
+    public static GameClock forNewGame() {
+        if (baseMillis == 0) {
+            return null;
+        }
+        return new GameClock(baseMillis, incrementMillis);
+    }
+
+    // 'side' has just moved, so the next side's turn starts
+    public void endTurn(Side side) {
+        long now = System.currentTimeMillis();
+        remaining[side.ordinal()] += increment - (now - turnStart);
+        turnStart = now;
+    }
+
+    public TimeManager timeManager(Side side) {
+        return new TimeManager(getRemaining(side), increment);
+    }
+
+    public long getRemaining(Side side) {
+        return remaining[side.ordinal()];
+    }
+}
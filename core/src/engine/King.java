@@ -1,10 +1,8 @@
 package engine;
 
-import java.util.ArrayList;
-
 public class King extends Piece {
     private static final int value = 0;
-    private static final int pieceIndex = 0;
+    private static final int pieceIndex = KING;
     private boolean hasCastled = false;
 
     public King(Side side, int row, int col, Board board) {
@@ -16,6 +14,7 @@ public class King extends Piece {
     // Copy constructor
     public King(King king, Board newBoard) {
         super(king, newBoard);
+        this.hasCastled = king.hasCastled;
     }
 
     @Override
@@ -42,9 +41,8 @@ public class King extends Piece {
             return false;
         }
         // can't castle through check
-        Square intermediateSquare = new Square(to.row, (square().col+to.col)/2);
-        Move intermediateMove = new Move(this, intermediateSquare);
-        if (board.wouldBeInCheck(intermediateMove, side)) {
+        int intermediateSquare = Bitboard.index(to.row, (square().col+to.col)/2);
+        if (board.isAttacked(intermediateSquare, side.opponent())) {
             return false;
         }
         // intervening squares must be empty
@@ -58,100 +56,64 @@ public class King extends Piece {
     }
 
     @Override
-    public ArrayList<Move> getValidMoves() {
-        ArrayList<Move> validMoves = new ArrayList<>();
-        Move move;
-        int toRow, toCol;
-        Square to;
-        // for all surrounding squares
-        for (int i = -1; i <= 1; i++) {
-            for (int j = -1; j <= 1; j++) {
-                if (i == 0 && j == 0) {
-                    continue;
-                }
-                toRow = square().row + i;
-                toCol = square().col + j;
-                // on the board
-                if (0 <= toRow && toRow <= 7 && 0 <= toCol && toCol <= 7) {
-                    to = new Square(toRow, toCol);
-                    move = new Move(this, to);
-                    // if square is empty or opponent-occupied
-                    if ((board.contentsAt(to) == null || board.contentsAt(to).side != side)
-                            && !board.wouldBeInCheck(move, side)) {
-                        validMoves.add(move);
-                    }
-                }
+    public int generateMoves(int[] moves, int count) {
+        int from = square().index();
+        // if square is empty or opponent-occupied
+        long targets = Bitboard.KING_ATTACKS[from] & ~board.getOccupancy(side);
+        while (targets != 0) {
+            int to = Bitboard.first(targets);
+            if (isSafe(Square.at(to))) {
+                moves[count++] = PackedMove.encode(from, to);
             }
+            targets &= targets - 1;
         }
         // only check castling if unmoved
         if (!isUnmoved()) {
-            return validMoves;
+            return count;
         }
-        Square queenCastlingSquare = new Square(square().row, square().col - 2);
-        Square kingCastlingSquare = new Square(square().row, square().col + 2);
-        if (castlingPossible(queenCastlingSquare)) {
-            Move queenSideCastle = new Castle(this, queenCastlingSquare);
-            if (!board.wouldBeInCheck(queenSideCastle, side)) {
-                validMoves.add(queenSideCastle);
-            }
+        Square queenCastlingSquare = Square.at(from - 2);
+        Square kingCastlingSquare = Square.at(from + 2);
+        if (castlingPossible(queenCastlingSquare) &&
+                !board.isAttacked(queenCastlingSquare.index(), side.opponent())) {
+            moves[count++] = PackedMove.encode(
+                    from, queenCastlingSquare.index(), PackedMove.CASTLE);
         }
-        if (castlingPossible(kingCastlingSquare)) {
-            Move kingSideCastle = new Castle(this, kingCastlingSquare);
-            if (!board.wouldBeInCheck(kingSideCastle, side)) {
-                validMoves.add(kingSideCastle);
-            }
+        if (castlingPossible(kingCastlingSquare) &&
+                !board.isAttacked(kingCastlingSquare.index(), side.opponent())) {
+            moves[count++] = PackedMove.encode(
+                    from, kingCastlingSquare.index(), PackedMove.CASTLE);
         }
-        return validMoves;
+        return count;
     }
 
     @Override
     public boolean validMoveExists() {
-        Move move;
-        int toRow, toCol;
-        Square to;
-        for (int i = -1; i <= 1; i++) {
-            for (int j = -1; j <= 1; j++) {
-                if (i == 0 && j == 0) {
-                    continue;
-                }
-                toRow = square().row + i;
-                toCol = square().col + j;
-                if (0 <= toRow && toRow <= 7 && 0 <= toCol && toCol <= 7) {
-                    to = new Square(toRow, toCol);
-                    move = new Move(this, to);
-                    if ((board.contentsAt(to) == null || board.contentsAt(to).side != side)
-                            && !board.wouldBeInCheck(move, side)) {
-                        return true;
-                    }
-                }
-            }
-        }
-        if (!isUnmoved()) {
-            return false;
-        }
-        Square queenCastlingSquare = new Square(square().row, square().col - 2);
-        Square kingCastlingSquare = new Square(square().row, square().col + 2);
-        if (castlingPossible(queenCastlingSquare)) {
-            Move queenSideCastle = new Castle(this, queenCastlingSquare);
-            if (!board.wouldBeInCheck(queenSideCastle, side)) {
-                return true;
-            }
-        }
-        if (castlingPossible(kingCastlingSquare)) {
-            Move kingSideCastle = new Castle(this, kingCastlingSquare);
-            if (!board.wouldBeInCheck(kingSideCastle, side)) {
+        long targets = Bitboard.KING_ATTACKS[square().index()] &
+                ~board.getOccupancy(side);
+        while (targets != 0) {
+            if (isSafe(Square.at(Bitboard.first(targets)))) {
                 return true;
             }
+            targets &= targets - 1;
         }
+        // castling is never the only move, the King can always stop halfway
         return false;
     }
 
-    public int distanceFromEdge() {
+    // the King itself mustn't block attacks along the line it moves on
+    private boolean isSafe(Square to) {
+        long occupiedWithoutKing =
+                board.getOccupied() & ~Bitboard.bit(square());
+        return !board.isAttacked(to.index(), side.opponent(), occupiedWithoutKing);
+    }
+
+    // steps to the nearest corner, so that it grows along the edges too
+    public int distanceFromCorner() {
         int verticalEdgeDistance =
                 Math.min(square().row, 7 - square().row);
         int horizontalEdgeDistance =
                 Math.min(square().col, 7 - square().col);
-        return Math.min(verticalEdgeDistance, horizontalEdgeDistance);
+        return verticalEdgeDistance + horizontalEdgeDistance;
     }
 
     public boolean hasCastled() {
@@ -1,15 +1,8 @@
 package engine;
 
-import java.util.ArrayList;
-
 public class Knight extends Piece {
     private static final int value = 3;
-    private static final int pieceIndex = 3;
-    // these arrays show the possible move directions at any point
-    private static final int[] up    =
-            new int[]{2,  2, 1,  1, -1, -1, -2, -2};
-    private static final int[] right =
-            new int[]{1, -1, 2, -2,  2, -2,  1, -1};
+    private static final int pieceIndex = KNIGHT;
 
     public Knight(Side side, int row, int col, boolean unmoved, Board board) {
         super(side, value, pieceIndex, row, col, unmoved, board);
@@ -41,46 +34,14 @@ public class Knight extends Piece {
     }
 
     @Override
-    public ArrayList<Move> getValidMoves() {
-        ArrayList<Move> validMoves = new ArrayList<>();
-        Move move;
-        Square to;
-        int toRow, toCol;
-        for (int i = 0; i < up.length; i++) {
-            toRow = square().row + up[i];
-            toCol = square().col + right[i];
-            if (0 <= toRow && toRow <= 7 && 0 <= toCol && toCol <= 7 ) {
-                to = new Square(toRow, toCol);
-                if (board.contentsAt(to) == null || board.contentsAt(to).side != side) {
-                    move = new Move(this, to);
-                    if (!board.wouldBeInCheck(move, side)) {
-                        validMoves.add(move);
-                    }
-                }
-            }
-        }
-        return validMoves;
+    public int generateMoves(int[] moves, int count) {
+        return addMovesTo(
+                Bitboard.KNIGHT_ATTACKS[square().index()], moves, count);
     }
 
     @Override
     public boolean validMoveExists() {
-        Move move;
-        Square to;
-        int toRow, toCol;
-        for (int i = 0; i < up.length; i++) {
-            toRow = square().row + up[i];
-            toCol = square().col + right[i];
-            if (0 <= toRow && toRow <= 7 && 0 <= toCol && toCol <= 7 ) {
-                to = new Square(toRow, toCol);
-                if (board.contentsAt(to) == null || board.contentsAt(to).side != side) {
-                    move = new Move(this, to);
-                    if (!board.wouldBeInCheck(move, side)) {
-                        return true;
-                    }
-                }
-            }
-        }
-        return false;
+        return validMoveToExists(Bitboard.KNIGHT_ATTACKS[square().index()]);
     }
 
 }
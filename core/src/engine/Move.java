@@ -6,6 +6,7 @@ import com.badlogic.gdx.Input;
 import java.util.ArrayList;
 import java.util.function.Predicate;
 
+// A move as shown to the user, wrapping the PackedMove the board makes
 public class Move implements Comparable<Move> {
     public final Board board;
     public final Piece piece;
@@ -13,27 +14,21 @@ public class Move implements Comparable<Move> {
     public final Square to;
     public final Piece taken;
     public final Side side;
-    public final int halfmoveClockPrior;
     public final boolean pieceFirstMove;
+    public final int packed;
+    // next move of the principal variation the search expects after this one
     private Move successor;
     private Integer score;
     private Integer heuristic;
     private EvaluationTracker evaluationTracker;
 
     public Move(Piece piece, Square to) {
-        this.board = piece.board;
-        this.piece = piece;
-        this.from = piece.square();
-        this.to = to;
-        this.taken = board.contentsAt(to);
-        this.side = piece.side;
-        this.pieceFirstMove = piece.isUnmoved();
-        this.halfmoveClockPrior = board.getHalfmoveClock();
+        this(piece, to, piece.board.contentsAt(to),
+                PackedMove.encode(piece.square().index(), to.index()));
     }
 
-
-    // For En Passant, where 'taken' piece is not located at 'to'
-    public Move(Piece piece, Square to, Piece taken) {
+    // For subclasses, 'taken' may not be located at 'to' for En Passant
+    protected Move(Piece piece, Square to, Piece taken, int packed) {
         this.board = piece.board;
         this.piece = piece;
         this.from = piece.square();
@@ -41,91 +36,43 @@ public class Move implements Comparable<Move> {
         this.taken = taken;
         this.side = piece.side;
         this.pieceFirstMove = piece.isUnmoved();
-        this.halfmoveClockPrior = board.getHalfmoveClock();
+        this.packed = packed;
     }
 
-    public Move(Move move, Board newBoard) {
-        this.board = newBoard;
-        this.piece = newBoard.contentsAt(move.piece.square());
-        this.from = move.from;
-        this.to = move.to;
-        if (move.taken != null) {
-            this.taken = newBoard.contentsAt(move.taken.square());
-        } else {
-            this.taken = null;
+    public static Move unpack(Board board, int packed) {
+        Piece piece = board.contentsAt(Square.at(PackedMove.from(packed)));
+        Square to = Square.at(PackedMove.to(packed));
+        switch (PackedMove.type(packed)) {
+            case PackedMove.CASTLE:
+                return new Castle(piece, to);
+            case PackedMove.EN_PASSANT:
+                return new EnPassant(piece, to);
+            case PackedMove.PROMOTION:
+                return new Promotion(
+                        piece, to, PackedMove.promotionIndex(packed));
+            default:
+                return new Move(piece, to);
         }
-        this.side = move.side;
-        this.pieceFirstMove = move.pieceFirstMove;
-        this.halfmoveClockPrior = move.halfmoveClockPrior;
-        this.successor = move.successor;
-        this.score = move.score;
-        this.evaluationTracker = move.evaluationTracker;
     }
 
     public Move makeCopy(Board newBoard) {
-        return new Move(this, newBoard);
+        Move copy = unpack(newBoard, packed);
+        copy.successor = successor;
+        copy.score = score;
+        copy.evaluationTracker = evaluationTracker;
+        return copy;
     }
 
     public void make() {
-        assert piece.square() == from;
-        if (taken != null) {
-            taken.setTaken(true);
-            board.decrementNumPieces(taken.side);
-        }
-        piece.setUnmoved(false);
-        piece.setSquare(to);
-        board.setContents(from, null);
-        board.setContents(to, piece);
-        register();
-    }
-
-    public void undo() {
-        assert piece.square() == to;
-        if (taken != null) {
-            taken.setTaken(false);
-            board.incrementNumPieces(taken.side);
-        }
-        board.setContents(to, taken);
-        board.setContents(from, piece);
-        piece.setSquare(from);
-        piece.setUnmoved(pieceFirstMove);
-        deregister();
-    }
-
-    public void register() {
-        updateZobrist();
-        if (side == Side.BLACK) {
-            board.setFullmoveNumber(board.getFullmoveNumber() + 1);
-        }
-        if (piece instanceof Pawn || taken != null) {
-            board.setHalfmoveClock(0);
-        } else {
-            board.setHalfmoveClock(board.getHalfmoveClock() + 1);
-        }
-        assert side == board.getNextTurn();
-        assert board.getLastMove() == null || board.getLastMove().side == side.opponent();
+        assert piece.square().equals(from);
+        board.makeMove(packed);
         board.moveHistory.add(this);
-        board.updateNextTurn();
     }
 
-    public void deregister() {
-        if (side == Side.BLACK) {
-            board.setFullmoveNumber(board.getFullmoveNumber() - 1);
-        }
-        board.setHalfmoveClock(halfmoveClockPrior);
-        board.updateNextTurn();
-        assert board.moveHistory.get(board.moveHistory.size() - 1) == this : this;
+    public void undo() {
+        assert board.getLastMove() == this : this;
         board.moveHistory.remove(board.moveHistory.size() - 1);
-        updateZobrist();
-    }
-
-    private void updateZobrist() {
-        board.zobristTracker.update(from, piece);
-        board.zobristTracker.update(to, piece);
-        if (taken != null) {
-            board.zobristTracker.update(to, taken);
-        }
-        board.zobristTracker.updateTurn();
+        board.undoMove(packed);
     }
 
     // Absolute value
@@ -156,6 +103,18 @@ public class Move implements Comparable<Move> {
         }
     }
 
+    // the anticipated sequence on one line, in coordinate notation
+    public String continuation() {
+        StringBuilder moves = new StringBuilder();
+        for (Move next = successor; next != null; next = next.getSuccessor()) {
+            if (moves.length() > 0) {
+                moves.append(" ");
+            }
+            moves.append(PackedMove.toString(next.packed));
+        }
+        return moves.toString();
+    }
+
     public ArrayList<String> anticipatedSequence() {
         if (successor == null) {
             return new ArrayList<>();
@@ -180,10 +139,9 @@ public class Move implements Comparable<Move> {
     protected String scoreString() {
         if (score != null) {
             String scoreString;
-            // arbitrary boundary, games usually shorter than 1000 moves
-            if (score > Integer.MAX_VALUE*0.9) {
+            if (Score.isWin(score)) {
                 scoreString = "win";
-            } else if (score < -Integer.MAX_VALUE*0.9) {
+            } else if (Score.isLoss(score)) {
                 scoreString = "loss";
             } else {
                 scoreString = score.toString();
@@ -257,17 +215,24 @@ public class Move implements Comparable<Move> {
     }
 
 
-    public void analyse() {
-        make();
-        Node moveNode = new Node(board);
-        successor = new Scorer(moveNode).getBestMove();
+    // searches the replies to this move on another thread, see finishAnalysis
+    public SearchJob startAnalysis() {
+        Board afterMove = new Board(board);
+        unpack(afterMove, packed).make();
+        return afterMove.startSearch(new TimeManager(), 1);
+    }
+
+    public void finishAnalysis(SearchJob job) {
+        successor = job.getBestMove();
         if (successor != null) {
             score = -successor.score;
+            evaluationTracker = successor.evaluationTracker;
         } else {
-            score = -board.evaluate();
+            make();
+            score = -board.evaluate(1);
+            undo();
+            evaluationTracker = new EvaluationTracker(0);
         }
-        undo();
-        evaluationTracker = Node.getEvaluationTracker();
     }
 
     public boolean isInteresting() {
@@ -290,21 +255,7 @@ public class Move implements Comparable<Move> {
     }
 
     private void calculateHeuristic() {
-        heuristic = 0;
-        if (taken != null) {
-            heuristic += taken.value * 10 - piece.value;
-        }
-        if (this instanceof Promotion) {
-            heuristic += (((Promotion) this).promoteTo.value - 1);
-        }
-        if (pieceFirstMove && !(piece instanceof King)) {
-            heuristic += rowProgress();
-        }
-        if (piece instanceof Pawn) {
-            heuristic += rowProgress();
-        } else if (board.pawnAttackedSquares().contains(to)) {
-            heuristic -= piece.value;
-        }
+        heuristic = board.heuristicScore(packed, board.pawnAttackedSquares());
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,82 @@
+package engine;
+
+/* What a search has learned about which moves cause cutoffs, used to order
+   moves so the best are searched first. One is shared by a tree of Nodes,
+   so each searching thread has its own and needs no locking.
+   - killers: the last two quiet moves to cause a cutoff at each ply, which
+     are often good in sibling positions too
+   - history: per side, from and to square, how much quiet moves there have
+     caused cutoffs, weighted towards deep ones
+   - countermoves: per side, the quiet move that last refuted each
+     opponent's move, indexed by that move's from and to squares */
+public class MoveOrdering {
+    // captures and promotions that don't lose material come first, then
+    // killers and the countermove, then other quiet moves by history, then
+    // losing captures
+    private static final int INTERESTING_BONUS = 1 << 26;
+    private static final int LOSING_CAPTURE_PENALTY = -(1 << 26);
+    private static final int KILLER_BONUS = 1 << 25;
+    private static final int COUNTERMOVE_BONUS = 1 << 24;
+    // history scores are halved when one reaches this, so recent cutoffs
+    // weigh more and scores stay below the bonuses
+    private static final int MAX_HISTORY = 1 << 20;
+    private final int[][] killers;
+    private final int[][][] history = new int[2][64][64];
+    private final int[][][] counterMoves = new int[2][64][64];
+
+    public MoveOrdering(int maxPly) {
+        killers = new int[maxPly][2];
+    }
+
+    public int score(Board board, int move, int ply, int precedingMove,
+                     long pawnAttackedSquares) {
+        int heuristic = board.heuristicScore(move, pawnAttackedSquares);
+        if (board.isInteresting(move)) {
+            // among these the heuristic orders by most valuable victim,
+            // then least valuable attacker
+            return (board.staticExchange(move) >= 0 ?
+                    INTERESTING_BONUS : LOSING_CAPTURE_PENALTY) + heuristic;
+        }
+        if (move == killers[ply][0]) {
+            return KILLER_BONUS + 1;
+        } else if (move == killers[ply][1]) {
+            return KILLER_BONUS;
+        }
+        int side = board.getNextTurn().ordinal();
+        if (precedingMove != PackedMove.NONE && move == counterMoves[side]
+                [PackedMove.from(precedingMove)][PackedMove.to(precedingMove)]) {
+            return COUNTERMOVE_BONUS;
+        }
+        return history[side][PackedMove.from(move)][PackedMove.to(move)] +
+                heuristic;
+    }
+
+    // a quiet move caused a cutoff at this ply, with this much depth left
+    public void recordCutoff(Board board, int move, int ply, int precedingMove,
+                             int depth) {
+        if (move != killers[ply][0]) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int side = board.getNextTurn().ordinal();
+        if (precedingMove != PackedMove.NONE) {
+            counterMoves[side][PackedMove.from(precedingMove)]
+                    [PackedMove.to(precedingMove)] = move;
+        }
+        int[] fromHistory = history[side][PackedMove.from(move)];
+        fromHistory[PackedMove.to(move)] += depth * depth;
+        if (fromHistory[PackedMove.to(move)] >= MAX_HISTORY) {
+            ageHistory();
+        }
+    }
+
+    private void ageHistory() {
+        for (int[][] sideHistory : history) {
+            for (int[] fromHistory : sideHistory) {
+                for (int to = 0; to < fromHistory.length; to++) {
+                    fromHistory[to] /= 2;
+                }
+            }
+        }
+    }
+}
@@ -1,109 +1,486 @@
 package engine;
 
-import java.util.HashMap;
-import java.util.PriorityQueue;
+import java.util.Arrays;
 
-// A node in the minimax tree representing a state of the board
+/* The minimax tree below a state of the board. One Node searches the whole
+   tree depth-first, making and undoing moves on its board, and keeps what
+   each node needs in arrays indexed by ply, so that a search allocates
+   nothing once its buffers are in use */
 public class Node {
-    private static final HashMap<Long, TranspositionEntry> transpositionTable =
-            new HashMap<>();
-    private static EvaluationTracker evaluationTracker = new EvaluationTracker(0);
-    private static boolean training;
-    public final boolean isRoot;
+    // deepest ply, including quiescence, that has move buffers
+    static final int MAX_PLY = 128;
+    private static final int NULL_MOVE_MIN_DEPTH = 3;
+    // most a quiet position's evaluation can be improved on, beyond the
+    // material a capture takes, for the capture to be worth searching
+    private static final int DELTA_MARGIN = 2000;
+    // deepest node, in plies left, that futility pruning and razoring apply to
+    private static final int FRONTIER_DEPTH = 3;
+    /* margins by depth left, beyond which the static evaluation is trusted
+       to show how a node will turn out. Evaluation is nearly all material,
+       so these are in pawns (1000) and widen with the plies a threat has
+       to come good in */
+    private static final int[] FUTILITY_MARGINS = new int[]{0, 1500, 2500, 3500};
+    private static final int[] REVERSE_FUTILITY_MARGINS =
+            new int[]{0, 1000, 2000, 3000};
+    // razoring never applies with one ply left
+    private static final int[] RAZOR_MARGINS = new int[]{0, 0, 3500, 4500};
+    // null-move cutoffs at least this deep are checked by a reduced search
+    private static final int NULL_MOVE_VERIFICATION_DEPTH = 6;
+    // plies to reduce a quiet move by, indexed by depth and number of moves
+    // already searched; grows with both, but the first three never reduce
+    private static final int[][] LATE_MOVE_REDUCTIONS =
+            new int[64][PackedMove.MAX_MOVES];
+    private static TranspositionTable transpositionTable =
+            new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MB);
+
+    static {
+        for (int depth = 3; depth < 64; depth++) {
+            for (int moves = 3; moves < PackedMove.MAX_MOVES; moves++) {
+                int reduction = (int) (0.75 +
+                        Math.log(depth) * Math.log(moves) / 2.25);
+                // always leave at least one ply to search
+                LATE_MOVE_REDUCTIONS[depth][moves] =
+                        Math.min(reduction, depth - 2);
+            }
+        }
+    }
+
     public final Board board;
-    public final Move precedingMove;
-    private Move bestMove;
+    // ply of the position the tree starts from: 0 at the root of a search,
+    // deeper for a sibling searched by another thread of a SplitSearch
+    private final int rootPly;
+    // by ply, the move that led there, NONE at the root or after a null move
+    private final int[] precedingMoves = new int[MAX_PLY + 1];
+    // by ply, the best move found so far, NONE until a move beats alpha
+    private final int[] bestMoves = new int[MAX_PLY + 1];
+    /* triangular principal variation table: row 'ply' holds the best line
+       from the node at that ply, from column ply up to pvLengths[ply]. A
+       move that beats alpha goes in front of the line its child found. Rows
+       are allocated on first use, as a split sibling's tree only reaches a
+       few plies */
+    private final int[][] pvTable = new int[MAX_PLY + 1][];
+    private final int[] pvLengths = new int[MAX_PLY + 1];
+    // move lists and their ordering scores, shared by a tree and indexed by
+    // ply so that no node allocates its own; each is allocated on first use
+    private final int[][] moveBuffers;
+    private final int[][] scoreBuffers;
+    private final MoveOrdering ordering;
+    // set when this node is part of a SplitSearch, otherwise null
+    private final SplitSearch.Split split;
+    // stops the search this node is part of, if it is timed
+    private final TimeManager timeManager;
+    // statistics of the current iteration, one per searching thread
+    private EvaluationTracker evaluationTracker;
+    // value of the root's best move
+    private int bestValue;
+    // root moves to leave out, to find the next best for Multi-PV, or null
+    private int[] excludedMoves;
 
     public Node(Board board) {
-        this.isRoot = true;
+        this(board, null, null);
+    }
+
+    public Node(Board board, TimeManager timeManager) {
+        this(board, null, timeManager);
+    }
+
+    // root of a SplitSearch
+    Node(Board board, SplitSearch.Split split) {
+        this(board, split, null);
+    }
+
+    private Node(Board board, SplitSearch.Split split, TimeManager timeManager) {
         this.board = board;
-        this.precedingMove = null;
+        this.rootPly = 0;
+        this.precedingMoves[0] = PackedMove.NONE;
+        this.moveBuffers = new int[MAX_PLY][];
+        this.scoreBuffers = new int[MAX_PLY][];
+        this.ordering = new MoveOrdering(MAX_PLY);
+        this.evaluationTracker = new EvaluationTracker(0);
+        this.split = split;
+        this.timeManager = timeManager;
     }
 
-    public Node(Move precedingMove) {
-        this.isRoot = false;
-        this.board = precedingMove.board;
-        this.precedingMove = precedingMove;
+    /* child, at 'ply', searched by another thread of a SplitSearch, on a
+       copy of the board with precedingMove made; it starts a tree of its own,
+       ordered by 'ordering', which only it uses until its search is over */
+    Node(Node parent, Board board, int ply, int precedingMove,
+         SplitSearch.Split split, MoveOrdering ordering) {
+        this.board = board;
+        this.rootPly = ply;
+        this.precedingMoves[ply] = precedingMove;
+        this.moveBuffers = new int[MAX_PLY][];
+        this.scoreBuffers = new int[MAX_PLY][];
+        this.ordering = ordering;
+        this.evaluationTracker = new EvaluationTracker(0);
+        this.split = split;
+        this.timeManager = parent.timeManager;
     }
 
     public int negamax(int depth, int alpha, int beta) {
-        if (Thread.currentThread().isInterrupted()) {
+        return negamax(rootPly, depth, alpha, beta, true);
+    }
+
+    private int negamax(int ply, int depth, int alpha, int beta,
+                        boolean nullMoveAllowed) {
+        if (pvTable[ply] == null) {
+            pvTable[ply] = new int[MAX_PLY + 1];
+        }
+        pvLengths[ply] = ply;
+        if (stopped()) {
             return Integer.MAX_VALUE;
         }
+        boolean isRoot = ply == 0;
+        boolean zeroWindow = beta - alpha == 1;
+        // so that nothing is reported if every move is excluded
+        bestMoves[ply] = PackedMove.NONE;
+        // a side that could avoid repeating a position would have done so
+        // already, so a repetition is a draw; this also cuts off cycles
+        if (!isRoot && board.repetitions() > 0) {
+            return 0;
+        }
+
+        if (!isRoot) {
+            // mate-distance pruning: nothing here can beat being mated now or
+            // mating next move, so if the window lies outside that, stop
+            alpha = Math.max(alpha, Score.mated(ply));
+            beta = Math.min(beta, -Score.mated(ply + 1));
+            if (alpha >= beta) {
+                return alpha;
+            }
+            // endgames in the tablebase are looked up rather than searched
+            int tablebaseValue = Tablebase.probe(board, ply);
+            if (tablebaseValue != Tablebase.UNKNOWN) {
+                evaluationTracker.incrementLeafNodes();
+                return tablebaseValue;
+            }
+        }
+        // check extension: a check must be answered, so it costs no depth,
+        // and lines of checks that lead to mate are followed to the end
+        boolean inCheck = board.isInCheck(board.getNextTurn());
+        if (inCheck) {
+            depth++;
+        }
+        int value;
 
         int alphaOrig = alpha;
-        TranspositionEntry entry = transpositionTable.get(board.zobristTracker.getVal());
-        if (entry != null && entry.depth >= depth) {
+        long key = board.zobristTracker.getVal();
+        // a SplitSearch must not depend on what other threads have stored
+        long entry = split == null ? transpositionTable.probe(key) :
+                TranspositionTable.MISS;
+        // the root always searches, so that it has a best move to return, and
+        // so does the rest of the principal variation, so that it is whole
+        if (zeroWindow && entry != TranspositionTable.MISS &&
+                TranspositionTable.depth(entry) >= depth) {
             evaluationTracker.incrementTranspositions();
-            if (entry.flag == 'E') {
+            int entryValue =
+                    Score.fromTable(TranspositionTable.value(entry), ply);
+            int bound = TranspositionTable.bound(entry);
+            if (bound == TranspositionTable.EXACT) {
                 // Exact match found
-                return entry.value;
-            } else if (entry.flag == 'L') {
+                return entryValue;
+            } else if (bound == TranspositionTable.LOWER_BOUND) {
                 // Lower-bound found: increase α if possible
-                alpha = Math.max(entry.value, alpha);
-            } else if (entry.flag == 'U') {
+                alpha = Math.max(entryValue, alpha);
+            } else if (bound == TranspositionTable.UPPER_BOUND) {
                 // Upper-bound found: decrease β if possible
-                beta = Math.min(entry.value, beta);
+                beta = Math.min(entryValue, beta);
             }
             // prune
             if (alpha >= beta) {
-                return entry.value;
+                return entryValue;
             }
         }
 
-        if (depth == 0 || board.noValidMoveExists()) {
+        if (depth == 0 || ply >= MAX_PLY || board.noValidMoveExists()) {
             evaluationTracker.incrementLeafNodes();
-            int evaluation = quiesce(alpha, beta);
-            updatePrediction(null, evaluation);
-            return evaluation;
-        }
-        PriorityQueue<Move> pq = new PriorityQueue<>(board.getAllValidMoves());
-        int nodeValue = -Integer.MAX_VALUE;
-        Node child;
-        Move subsequentMove;
-        while ((subsequentMove = pq.poll()) != null) {
-            subsequentMove.make();
-            child = new Node(subsequentMove);
-            nodeValue = Math.max(
-                    nodeValue,
-                    -child.negamax(depth - 1, -beta, -alpha)
-            );
-            subsequentMove.undo();
-            if (nodeValue > alpha) {
-                alpha = nodeValue;
-                updatePrediction(subsequentMove, nodeValue);
+            return quiesce(alpha, beta, ply);
+        }
+        // the static evaluation is only trusted to prune where a wrong guess
+        // can't change the principal variation, and not in check or in a
+        // deterministic SplitSearch
+        boolean pruningAllowed = zeroWindow && !isRoot && !inCheck &&
+                split == null;
+        // there are moves, else this would have been a leaf
+        int staticEval = pruningAllowed ? board.staticEvaluation() : 0;
+        if (pruningAllowed && depth <= FRONTIER_DEPTH && !Score.isMate(beta)) {
+            // reverse futility pruning: so far above beta that the opponent
+            // is unlikely to win enough back in the plies left
+            if (staticEval - REVERSE_FUTILITY_MARGINS[depth] >= beta) {
+                return beta;
+            }
+            // razoring: so far below alpha that only captures could help,
+            // so if they don't, the quiet moves needn't be searched. Quiet
+            // checks can still mate, so not with one ply left, where they
+            // are all that quiescence misses, nor while there are any
+            if (depth > 1 && staticEval + RAZOR_MARGINS[depth] < alpha) {
+                evaluationTracker.incrementLeafNodes();
+                value = quiesce(alpha, beta, ply);
+                if (value <= alpha && !hasQuietCheck(ply)) {
+                    return value;
+                }
+            }
+        }
+        if (nullMoveAllowed && pruningAllowed &&
+                nullMovePrunes(ply, depth, beta, staticEval)) {
+            return beta;
+        }
+        // futility pruning: so far below alpha that quiet moves, after the
+        // first, can't be expected to reach it
+        boolean futile = pruningAllowed && depth <= FRONTIER_DEPTH &&
+                !Score.isMate(alpha) &&
+                staticEval + FUTILITY_MARGINS[depth] <= alpha;
+        if (stopped()) {
+            return Integer.MAX_VALUE;
+        }
+        int nodeValue = -Score.INFINITY;
+        int movesSearched = 0;
+        // the best move found here by an earlier search is tried first, and
+        // if it causes a cutoff no moves need to be generated at all
+        int hashMove = entry == TranspositionTable.MISS ? PackedMove.NONE :
+                TranspositionTable.bestMove(entry);
+        if (hashMove != PackedMove.NONE && !isExcluded(ply, hashMove) &&
+                board.isLegal(hashMove)) {
+            nodeValue = searchMove(ply, hashMove, depth, alpha, beta, true, 0);
+            if (stopped()) {
+                return Integer.MAX_VALUE;
             }
+            movesSearched++;
+            alpha = Math.max(nodeValue, alpha);
             if (alpha >= beta) {
-                break;
+                recordCutoff(ply, hashMove, depth);
+            }
+        } else {
+            hashMove = PackedMove.NONE;
+        }
+        if (alpha < beta) {
+            allocateBuffers(ply);
+            int[] moves = moveBuffers[ply];
+            int[] scores = scoreBuffers[ply];
+            int numMoves = board.generateMoves(moves, 0);
+            long pawnAttackedSquares = board.pawnAttackedSquares();
+            for (int i = 0; i < numMoves; i++) {
+                scores[i] = ordering.score(board, moves[i], ply,
+                        precedingMoves[ply], pawnAttackedSquares);
+            }
+            int subsequentMove;
+            for (int i = 0; i < numMoves; i++) {
+                subsequentMove = selectNext(moves, scores, i, numMoves);
+                if (subsequentMove == hashMove ||
+                        isExcluded(ply, subsequentMove)) {
+                    continue;
+                }
+                if (i == 1 && split != null &&
+                        depth >= SplitSearch.MIN_SPLIT_DEPTH) {
+                    // young brothers wait: the eldest has been searched, the
+                    // rest are searched in parallel
+                    value = SplitSearch.searchSiblings(this, ply,
+                            remainingMoves(moves, scores, i, numMoves), depth,
+                            alpha, beta);
+                    if (stopped()) {
+                        return Integer.MAX_VALUE;
+                    }
+                    nodeValue = Math.max(nodeValue, value);
+                    break;
+                }
+                if (futile && movesSearched > 0 &&
+                        !board.isInteresting(subsequentMove) &&
+                        !givesCheck(subsequentMove)) {
+                    // it can't be worth more than the margin allows
+                    nodeValue = Math.max(nodeValue,
+                            staticEval + FUTILITY_MARGINS[depth]);
+                    continue;
+                }
+                // late quiet moves are unlikely to matter, so search them
+                // less deeply unless they prove otherwise
+                int reduction = 0;
+                if (!inCheck && split == null &&
+                        !board.isInteresting(subsequentMove)) {
+                    reduction = LATE_MOVE_REDUCTIONS[Math.min(depth, 63)]
+                            [movesSearched];
+                    if (beta - alpha > 1 && reduction > 0) {
+                        // less so on the principal variation
+                        reduction--;
+                    }
+                }
+                // the first move searched is expected to be the best
+                value = searchMove(ply, subsequentMove, depth, alpha, beta,
+                        movesSearched == 0, reduction);
+                if (stopped()) {
+                    // don't let a partial result into the table
+                    return Integer.MAX_VALUE;
+                }
+                movesSearched++;
+                nodeValue = Math.max(nodeValue, value);
+                alpha = Math.max(nodeValue, alpha);
+                if (alpha >= beta) {
+                    recordCutoff(ply, subsequentMove, depth);
+                    break;
+                }
             }
         }
 
+        int bound;
         if (nodeValue <= alphaOrig) {
-            entry = new TranspositionEntry(nodeValue, depth, 'U');
+            bound = TranspositionTable.UPPER_BOUND;
         } else if (nodeValue >= beta) {
-            entry = new TranspositionEntry(nodeValue, depth, 'L');
+            bound = TranspositionTable.LOWER_BOUND;
         } else {
-            entry = new TranspositionEntry(nodeValue, depth, 'E');
+            bound = TranspositionTable.EXACT;
+        }
+        // with moves excluded, the root's value isn't the position's; the
+        // values below it are, and later lines share them
+        if (split == null && !(isRoot && excludedMoves != null)) {
+            transpositionTable.store(key, Score.toTable(nodeValue, ply), depth,
+                    bound, bestMoves[ply] == PackedMove.NONE ? hashMove :
+                            bestMoves[ply]);
         }
-        transpositionTable.put(board.zobristTracker.getVal(), entry);
 
         return nodeValue;
     }
 
-    private int quiesce(int alpha, int beta) {
+    /* Null-move pruning: if we could pass the turn and a reduced search still
+       fails high, a real move would almost surely do so too, so the node is
+       cut off without a full search. This is unsound in zugzwang, where
+       passing would be the best move, so it isn't tried in check, with only
+       King and pawns, or straight after another null move, and deep cutoffs
+       are verified by a reduced search of the real moves. Only called where
+       pruning is allowed */
+    private boolean nullMovePrunes(int ply, int depth, int beta,
+                                   int staticEval) {
+        if (depth < NULL_MOVE_MIN_DEPTH ||
+                precedingMoves[ply] == PackedMove.NONE ||
+                !board.hasNonPawnMaterial(board.getNextTurn()) ||
+                // a mate can't be proven by passing
+                Score.isMate(beta) || staticEval < beta) {
+            return false;
+        }
+        int reduction = depth > 6 ? 3 : 2;
+        board.makeNullMove();
+        precedingMoves[ply + 1] = PackedMove.NONE;
+        int value = -negamax(ply + 1,
+                Math.max(depth - 1 - reduction, 0), -beta, -beta + 1, true);
+        board.undoNullMove();
+        if (stopped() || value < beta) {
+            return false;
+        }
+        if (depth < NULL_MOVE_VERIFICATION_DEPTH) {
+            return true;
+        }
+        boolean verified =
+                negamax(ply, depth - reduction, beta - 1, beta, false) >= beta;
+        // the verification searched this same ply; if the node is searched
+        // after all, it mustn't inherit that search's best move or line
+        bestMoves[ply] = PackedMove.NONE;
+        pvLengths[ply] = ply;
+        return verified;
+    }
+
+    /* value of 'move' to this node, searched to one less depth. Principal
+       variation search: only the move expected to be best gets the full
+       window, the rest are just shown to be no better than alpha with a
+       cheaper zero-width window, and re-searched if that turns out false.
+       A reduced move is first searched that much shallower, and searched to
+       full depth only if it beats alpha; moves that give check never are */
+    private int searchMove(int ply, int move, int depth, int alpha, int beta,
+                           boolean expectedBest, int reduction) {
+        board.makeMove(move);
+        int child = ply + 1;
+        precedingMoves[child] = move;
+        int value;
+        if (expectedBest) {
+            value = -negamax(child, depth - 1, -beta, -alpha, true);
+        } else {
+            if (board.isInCheck(board.getNextTurn())) {
+                reduction = 0;
+            }
+            value = -negamax(child, depth - 1 - reduction, -alpha - 1, -alpha,
+                    true);
+            if (reduction > 0 && value > alpha) {
+                value = -negamax(child, depth - 1, -alpha - 1, -alpha, true);
+            }
+            if (alpha < value && value < beta) {
+                value = -negamax(child, depth - 1, -beta, -alpha, true);
+            }
+        }
+        board.undoMove(move);
+        if (value > alpha) {
+            updatePrediction(ply, move, value, this);
+        }
+        return value;
+    }
+
+    // whether the side to move has a move that checks without capturing or
+    // promoting, which quiescence wouldn't search
+    private boolean hasQuietCheck(int ply) {
+        allocateBuffers(ply);
+        int[] moves = moveBuffers[ply];
+        int numMoves = board.generateMoves(moves, 0);
+        for (int i = 0; i < numMoves; i++) {
+            if (!board.isInteresting(moves[i]) && givesCheck(moves[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean givesCheck(int move) {
+        board.makeMove(move);
+        boolean check = board.isInCheck(board.getNextTurn());
+        board.undoMove(move);
+        return check;
+    }
+
+    // material a capture or promotion takes, in pawns, before any recapture
+    private int materialGain(int move) {
+        Piece taken = board.capturedBy(move);
+        int gain = taken == null ? 0 : taken.value;
+        if (PackedMove.type(move) == PackedMove.PROMOTION) {
+            gain += Queen.value - 1;
+        }
+        return gain;
+    }
+
+    private int quiesce(int alpha, int beta, int ply) {
         evaluationTracker.incrementEvaluations();
-        int baseline = board.evaluate();
+        int baseline = board.evaluate(ply);
         if (baseline >= beta)
             return beta;
         if (alpha < baseline)
             alpha = baseline;
+        if (ply >= MAX_PLY)
+            return alpha;
         int score;
-        PriorityQueue<Move> pq = new PriorityQueue<>(board.getInterestingMoves());
-        Move interestingMove;
-        while ((interestingMove = pq.poll()) != null) {
-            interestingMove.make();
-            score = -quiesce(-beta, -alpha);
-            interestingMove.undo();
+        allocateBuffers(ply);
+        int[] moves = moveBuffers[ply];
+        int[] scores = scoreBuffers[ply];
+        int numCaptures = board.generateInterestingMoves(moves, 0);
+        long pawnAttackedSquares = board.pawnAttackedSquares();
+        int numMoves = 0;
+        for (int i = 0; i < numCaptures; i++) {
+            int move = moves[i];
+            int exchange = board.staticExchange(move);
+            // losing material can't raise alpha, as standing pat is allowed
+            if (exchange < 0) {
+                continue;
+            }
+            // delta pruning: nor can a capture that leaves us well short of
+            // alpha even if it goes unanswered
+            if (baseline + 1000 * materialGain(move) + DELTA_MARGIN <= alpha) {
+                continue;
+            }
+            moves[numMoves] = move;
+            // by material won, then most valuable victim, least valuable
+            // attacker
+            scores[numMoves++] = exchange * 128 +
+                    board.heuristicScore(move, pawnAttackedSquares);
+        }
+        int interestingMove;
+        for (int i = 0; i < numMoves; i++) {
+            interestingMove = selectNext(moves, scores, i, numMoves);
+            board.makeMove(interestingMove);
+            score = -quiesce(-beta, -alpha, ply + 1);
+            board.undoMove(interestingMove);
             if (score >= beta)
                 return beta;
             if (score > alpha)
@@ -112,35 +489,174 @@ public class Node {
         return alpha;
     }
 
-    private void updatePrediction(Move subsequentMove, int nodeValue) {
-        if (isRoot) {
-            bestMove = subsequentMove;
-            bestMove.setScore(nodeValue);
+    private void recordCutoff(int ply, int move, int depth) {
+        if (!board.isInteresting(move)) {
+            ordering.recordCutoff(board, move, ply, precedingMoves[ply], depth);
+        }
+    }
+
+    private boolean stopped() {
+        return (timeManager != null && timeManager.isStopped()) ||
+                (split != null && split.isCancelled());
+    }
+
+    private void allocateBuffers(int ply) {
+        if (moveBuffers[ply] == null) {
+            moveBuffers[ply] = new int[PackedMove.MAX_MOVES];
+            scoreBuffers[ply] = new int[PackedMove.MAX_MOVES];
         }
-        if (training && precedingMove != null) {
-            precedingMove.setSuccessor(subsequentMove);
-            precedingMove.setScore(-nodeValue);
+    }
+
+    // moves from index i onwards, in the order they would be searched
+    private static int[] remainingMoves(int[] moves, int[] scores, int i,
+                                        int end) {
+        int[] remaining = new int[end - i];
+        remaining[0] = moves[i];
+        for (int j = i + 1; j < end; j++) {
+            remaining[j - i] = selectNext(moves, scores, j, end);
         }
+        return remaining;
     }
 
-    public Move getBestMove() {
-        return bestMove;
+    // swaps the highest scoring move left into position i and returns it
+    private static int selectNext(int[] moves, int[] scores, int i, int end) {
+        int best = i;
+        for (int j = i + 1; j < end; j++) {
+            if (scores[j] > scores[best]) {
+                best = j;
+            }
+        }
+        int move = moves[best];
+        moves[best] = moves[i];
+        moves[i] = move;
+        int score = scores[best];
+        scores[best] = scores[i];
+        scores[i] = score;
+        return move;
     }
 
-    public void setBestMove(Move bestMove) {
-        this.bestMove = bestMove;
+    // 'child' is the Node that searched the line following subsequentMove
+    void updatePrediction(int ply, int subsequentMove, int nodeValue,
+                          Node child) {
+        bestMoves[ply] = subsequentMove;
+        int[] line = pvTable[ply];
+        line[ply] = subsequentMove;
+        int childLength = child.pvLengths[ply + 1];
+        System.arraycopy(child.pvTable[ply + 1], ply + 1, line, ply + 1,
+                childLength - (ply + 1));
+        pvLengths[ply] = childLength;
+        if (ply == 0) {
+            bestValue = nodeValue;
+        }
     }
 
-    public static void resetEvaluationTracker(int depth) {
+    public int getBestMove() {
+        return bestMoves[rootPly];
+    }
+
+    /* later searches from this root leave these moves out, so the best of
+       the rest is found; none to search every move again */
+    public void excludeRootMoves(int... moves) {
+        assert rootPly == 0;
+        excludedMoves = moves.length == 0 ? null : moves;
+    }
+
+    private boolean isExcluded(int ply, int move) {
+        if (ply != 0 || excludedMoves == null) {
+            return false;
+        }
+        for (int excluded : excludedMoves) {
+            if (move == excluded) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getBestValue() {
+        return bestValue;
+    }
+
+    // the best move from the root, followed by the moves expected after it
+    public int[] getPrincipalVariation() {
+        if (pvTable[rootPly] == null) {
+            return new int[0];
+        }
+        return Arrays.copyOfRange(pvTable[rootPly], rootPly,
+                pvLengths[rootPly]);
+    }
+
+    /* the principal variation after bestMove as Move objects, each scored
+       for the side making it. A line cut short at once, e.g. by the
+       transposition table, still gets the reply stored there, so that
+       there is something to ponder on */
+    public Move predictedReplies() {
+        int[] line = getPrincipalVariation();
+        if (line.length == 0) {
+            return null;
+        }
+        board.makeMove(line[0]);
+        Move reply = null;
+        if (line.length > 1) {
+            reply = unpackLine(line, 1, -bestValue);
+        } else {
+            long entry = transpositionTable.probe(board.zobristTracker.getVal());
+            int hashMove = entry == TranspositionTable.MISS ? PackedMove.NONE :
+                    TranspositionTable.bestMove(entry);
+            if (hashMove != PackedMove.NONE && board.isLegal(hashMove)) {
+                reply = Move.unpack(board, hashMove);
+            }
+        }
+        board.undoMove(line[0]);
+        return reply;
+    }
+
+    // line[i] onwards, from the position they are played in
+    private Move unpackLine(int[] line, int i, int value) {
+        Move move = Move.unpack(board, line[i]);
+        move.setScore(value);
+        if (i + 1 < line.length) {
+            board.makeMove(line[i]);
+            move.setSuccessor(unpackLine(line, i + 1, -value));
+            board.undoMove(line[i]);
+        }
+        return move;
+    }
+
+    public void resetEvaluationTracker(int depth) {
+        assert rootPly == 0;
         evaluationTracker = new EvaluationTracker(depth);
+    }
+
+    /* the table is kept between iterations and between moves, since earlier
+       results still hold; entries from previous searches are just replaced
+       first. It is only emptied for a new game. Concurrent searches all
+       share it */
+    public static void newSearch() {
+        transpositionTable.newSearch();
+    }
+
+    public static void newGame() {
         transpositionTable.clear();
     }
 
-    public static EvaluationTracker getEvaluationTracker() {
-        return evaluationTracker;
+    /* replaces the table, so only call this between searches. The old one
+       is let go first, so the two are never needed at once */
+    public static void setTranspositionTableSize(int megabytes) {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException(
+                    "The transposition table needs at least 1MB, not " +
+                    megabytes + "MB");
+        }
+        transpositionTable = null;
+        transpositionTable = new TranspositionTable(megabytes);
     }
 
-    public static void setTraining(boolean training) {
-        Node.training = training;
+    SplitSearch.Split getSplit() {
+        return split;
+    }
+
+    public EvaluationTracker getEvaluationTracker() {
+        return evaluationTracker;
     }
 }
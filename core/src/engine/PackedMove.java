@@ -0,0 +1,55 @@
+package engine;
+
+/* Moves as used by the search, packed into an int so that millions of them
+   cost no allocation: bits 0-5 hold the 'from' square, 6-11 the 'to' square
+   (both indexed as in Bitboard), 12-13 the move type and 14-16 the piece
+   index promoted to. Move objects wrap these for the UI and analysis */
+public final class PackedMove {
+    // 'from' and 'to' are never equal, so no real move packs to 0
+    public static final int NONE = 0;
+    public static final int NORMAL = 0;
+    public static final int CASTLE = 1;
+    public static final int EN_PASSANT = 2;
+    public static final int PROMOTION = 3;
+    // no legal position has more than 218 moves
+    public static final int MAX_MOVES = 256;
+
+    private PackedMove() {}
+
+    public static int encode(int from, int to) {
+        return from | (to << 6);
+    }
+
+    public static int encode(int from, int to, int type) {
+        return from | (to << 6) | (type << 12);
+    }
+
+    public static int promotion(int from, int to, int pieceIndex) {
+        return from | (to << 6) | (PROMOTION << 12) | (pieceIndex << 14);
+    }
+
+    public static int from(int move) {
+        return move & 63;
+    }
+
+    public static int to(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    public static int type(int move) {
+        return (move >>> 12) & 3;
+    }
+
+    public static int promotionIndex(int move) {
+        return (move >>> 14) & 7;
+    }
+
+    // coordinate notation, e.g. e2e4 or e7e8q
+    public static String toString(int move) {
+        String string = Square.at(from(move)).toString() + Square.at(to(move));
+        if (type(move) == PROMOTION) {
+            string += "qbnr".charAt(promotionIndex(move) - Piece.QUEEN);
+        }
+        return string;
+    }
+}
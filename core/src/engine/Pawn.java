@@ -4,7 +4,10 @@ import java.util.ArrayList;
 
 public class Pawn extends Piece {
     private static final int value = 1;
-    private static final int pieceIndex = 5;
+    private static final int pieceIndex = PAWN;
+    private static final int[] PROMOTION_PIECES =
+            new int[]{QUEEN, ROOK, KNIGHT, BISHOP};
+    private final Piece[] promotions = new Piece[NUM_TYPES];
 
     public Pawn(Side side, int row, int col, Board board) {
         super(side, value, pieceIndex, row, col,
@@ -68,67 +71,61 @@ public class Pawn extends Piece {
     }
 
     @Override
-    public ArrayList<Move> getValidMoves() {
-        ArrayList<Move> validMoves = new ArrayList<>();
-        Move move;
+    public int generateMoves(int[] moves, int count) {
+        int from = square().index();
         Square to;
         int toRow = (side == Side.WHITE) ? square().row - 1 : square().row + 1;
         for (int toCol = square().col - 1; toCol <= square().col + 1; toCol++) {
             if (!(0 <= toCol && toCol <= 7)) {
                 continue;
             }
-            to = new Square(toRow, toCol);
+            to = Square.at(Bitboard.index(toRow, toCol));
             if (promotionPossible(to)) {
                 // if promotion is possible, no other move type is possible
-                validMoves.addAll(getValidPromotions(to));
+                count = addPromotions(to, moves, count);
             } else if (enPassantPossible(to)) {
-                Move enPassant = new EnPassant(this, to);
+                int enPassant = PackedMove.encode(
+                        from, to.index(), PackedMove.EN_PASSANT);
                 if (!board.wouldBeInCheck(enPassant, side)) {
-                    validMoves.add(enPassant);
+                    moves[count++] = enPassant;
                 }
             } else {
                 if ((square().row == 1 && side == Side.WHITE) ||
                     (square().row == 6 && side == Side.BLACK)) {
                     continue;
                 }
-                if (canReach(to)) {
-                    move = new Move(this, to);
-                    if (!board.wouldBeInCheck(move, side)) {
-                        validMoves.add(move);
-                    }
+                if (canReach(to) && isLegalTarget(to)) {
+                    moves[count++] = PackedMove.encode(from, to.index());
                 }
             }
         }
         if (isUnmoved()) {
             toRow = side == Side.WHITE ? square().row - 2 : square().row + 2;
-            to = new Square(toRow, square().col);
-            if (canReach(to)) {
-                move = new Move(this, to);
-                if (!board.wouldBeInCheck(move, side)) {
-                    validMoves.add(move);
-                }
+            to = Square.at(Bitboard.index(toRow, square().col));
+            if (canReach(to) && isLegalTarget(to)) {
+                moves[count++] = PackedMove.encode(from, to.index());
             }
         }
-        return validMoves;
+        return count;
     }
 
     @Override
     public boolean validMoveExists() {
-        Move move;
         Square to;
         int toRow = (side == Side.WHITE) ? square().row - 1 : square().row + 1;
         for (int toCol = square().col - 1; toCol <= square().col + 1; toCol++) {
             if (!(0 <= toCol && toCol <= 7)) {
                 continue;
             }
-            to = new Square(toRow, toCol);
+            to = Square.at(Bitboard.index(toRow, toCol));
             if (promotionPossible(to)) {
                 // if promotion is possible, no other move type is possible
-                if (getValidPromotions(to).size() > 0) {
+                if (canPromoteTo(to) && isLegalTarget(to)) {
                     return true;
                 }
             } else if (enPassantPossible(to)) {
-                Move enPassant = new EnPassant(this, to);
+                int enPassant = PackedMove.encode(
+                        square().index(), to.index(), PackedMove.EN_PASSANT);
                 if (!board.wouldBeInCheck(enPassant, side)) {
                     return true;
                 }
@@ -137,43 +134,68 @@ public class Pawn extends Piece {
                         (square().row == 6 && side == Side.BLACK)) {
                     continue;
                 }
-                if (canReach(to)) {
-                    move = new Move(this, to);
-                    if (!board.wouldBeInCheck(move, side)) {
-                        return true;
-                    }
+                if (canReach(to) && isLegalTarget(to)) {
+                    return true;
                 }
             }
         }
         if (isUnmoved()) {
             toRow = side == Side.WHITE ? square().row - 2 : square().row + 2;
-            to = new Square(toRow, square().col);
-            if (canReach(to)) {
-                move = new Move(this, to);
-                return !board.wouldBeInCheck(move, side);
-            }
+            to = Square.at(Bitboard.index(toRow, square().col));
+            return canReach(to) && isLegalTarget(to);
         }
         return false;
     }
 
     public ArrayList<Promotion> getValidPromotions(Square to) {
         ArrayList<Promotion> validPromotions = new ArrayList<>();
-        if (square().colDiff(to) == 0 && board.contentsAt(to) != null) {
-            return validPromotions;
+        int[] moves = new int[PROMOTION_PIECES.length];
+        int count = addPromotions(to, moves, 0);
+        for (int i = 0; i < count; i++) {
+            validPromotions.add((Promotion) Move.unpack(board, moves[i]));
         }
-        if (square().colDiff(to) == 1 && (board.contentsAt(to) == null ||
-            board.contentsAt(to).side == side)) {
-            return validPromotions;
+        return validPromotions;
+    }
+
+    private int addPromotions(Square to, int[] moves, int count) {
+        if (canPromoteTo(to) && isLegalTarget(to)) {
+            for (int promoteTo : PROMOTION_PIECES) {
+                moves[count++] = PackedMove.promotion(
+                        square().index(), to.index(), promoteTo);
+            }
         }
-        Promotion samplePromotion =
-                new Promotion(this, to, new Queen(this, to));
-        if (!board.wouldBeInCheck(samplePromotion, side)) {
-            validPromotions.add(samplePromotion);
-            validPromotions.add(new Promotion(this, to, new Rook(this, to)));
-            validPromotions.add(new Promotion(this, to, new Knight(this, to)));
-            validPromotions.add(new Promotion(this, to, new Bishop(this, to)));
+        return count;
+    }
+
+    // promotion rank is already reached, check the destination
+    private boolean canPromoteTo(Square to) {
+        if (square().colDiff(to) == 0) {
+            return board.contentsAt(to) == null;
         }
-        return validPromotions;
+        return board.contentsAt(to) != null && board.contentsAt(to).side != side;
+    }
+
+    // the same piece is reused every time this pawn promotes to its type
+    public Piece promotedTo(int pieceIndex) {
+        if (promotions[pieceIndex] == null) {
+            switch (pieceIndex) {
+                case QUEEN:
+                    promotions[pieceIndex] = new Queen(this, square());
+                    break;
+                case ROOK:
+                    promotions[pieceIndex] = new Rook(this, square());
+                    break;
+                case KNIGHT:
+                    promotions[pieceIndex] = new Knight(this, square());
+                    break;
+                case BISHOP:
+                    promotions[pieceIndex] = new Bishop(this, square());
+                    break;
+                default:
+                    assert false : "can't promote to " + pieceIndex;
+            }
+        }
+        return promotions[pieceIndex];
     }
 
     @Override
@@ -184,13 +206,8 @@ public class Pawn extends Piece {
             // can only en passant a pawn that is 1 rank and 1 file away
             if (beingTaken instanceof Pawn &&
                     square().rowDiff(to) == 1 && square().colDiff(to) == 1) {
-                Move lastMove = board.getLastMove();
-                // pawn must be behind the new square
-                if (lastMove != null && lastMove.to.col == to.col &&
-                        lastMove.to.row == square().row) {
-                    // previous move must have been 2 squares
-                    return lastMove.rowDiff() == 2;
-                }
+                // previous move must have been that pawn moving 2 squares
+                return board.getEnPassantSquare() == to.index();
             }
         }
         return false;
@@ -0,0 +1,133 @@
+package engine;
+
+/* Counts the leaf nodes of the legal move tree to a fixed depth. Comparing
+   against published counts validates move generation (castling, en passant,
+   promotion, pins and checks all show up at low depths), and timing it
+   benchmarks move generation and make/undo.
+
+   Usage: Perft [--no-bulk] [depth [fen]]
+   With no depth, runs every standard position and checks its count.
+   With a depth, prints the count below each root move of the given position
+   (the standard setup by default), to narrow down a bad count.
+   With bulk counting, moves at the last ply are counted without being made */
+public class Perft {
+    // positions from the chessprogramming wiki, with their counts by depth
+    private static final String[] FENS = new String[]{
+            Board.STANDARD_SETUP,
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+    };
+    private static final long[][] COUNTS = new long[][]{
+            {20, 400, 8902, 197281, 4865609, 119060324},
+            {48, 2039, 97862, 4085603, 193690690},
+            {14, 191, 2812, 43238, 674624, 11030083},
+            {6, 264, 9467, 422333, 15833292},
+            {44, 1486, 62379, 2103487, 89941194},
+            {46, 2079, 89890, 3894594, 164075551},
+    };
+    // depth run for each position by the suite, a few seconds in total
+    private static final int[] SUITE_DEPTHS = new int[]{5, 4, 5, 4, 4, 4};
+
+    private final Board board;
+    private final boolean bulk;
+    // one move list per remaining depth
+    private final int[][] moveBuffers;
+
+    public Perft(Board board, int maxDepth, boolean bulk) {
+        this.board = board;
+        this.bulk = bulk;
+        this.moveBuffers = new int[maxDepth + 1][PackedMove.MAX_MOVES];
+    }
+
+    public long count(int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] moves = moveBuffers[depth];
+        int numMoves = board.generateMoves(moves, 0);
+        if (bulk && depth == 1) {
+            return numMoves;
+        }
+        long nodes = 0;
+        for (int i = 0; i < numMoves; i++) {
+            board.makeMove(moves[i]);
+            nodes += count(depth - 1);
+            board.undoMove(moves[i]);
+        }
+        return nodes;
+    }
+
+    // count below each root move, in coordinate notation as other engines do
+    public long divide(int depth) {
+        int[] moves = moveBuffers[depth];
+        int numMoves = board.generateMoves(moves, 0);
+        long nodes = 0;
+        for (int i = 0; i < numMoves; i++) {
+            board.makeMove(moves[i]);
+            long moveNodes = count(depth - 1);
+            board.undoMove(moves[i]);
+            System.out.format("%s: %d\n", PackedMove.toString(moves[i]), moveNodes);
+            nodes += moveNodes;
+        }
+        return nodes;
+    }
+
+    private static boolean runSuite(boolean bulk) {
+        boolean passed = true;
+        long totalNodes = 0;
+        long totalNanos = 0;
+        for (int i = 0; i < FENS.length; i++) {
+            int depth = SUITE_DEPTHS[i];
+            long expected = COUNTS[i][depth - 1];
+            long startTime = System.nanoTime();
+            long nodes = new Perft(new Board(FENS[i]), depth, bulk).count(depth);
+            long nanos = System.nanoTime() - startTime;
+            totalNodes += nodes;
+            totalNanos += nanos;
+            passed &= nodes == expected;
+            System.out.format("%s depth %d: %d nodes, %s, %.3fs, %s\n",
+                    nodes == expected ? "OK  " : "FAIL",
+                    depth,
+                    nodes,
+                    nodes == expected ? "as expected" : "expected " + expected,
+                    nanos / 1e9,
+                    nodesPerSecond(nodes, nanos)
+            );
+            System.out.format("\t%s\n", FENS[i]);
+        }
+        System.out.format("Total: %d nodes, %.3fs, %s\n",
+                totalNodes, totalNanos / 1e9,
+                nodesPerSecond(totalNodes, totalNanos)
+        );
+        return passed;
+    }
+
+    private static String nodesPerSecond(long nodes, long nanos) {
+        return String.format("%.0f nodes/s", nodes / (Math.max(nanos, 1) / 1e9));
+    }
+
+    public static void main(String[] args) {
+        CommandLine commandLine = new CommandLine(args);
+        boolean bulk = !commandLine.option("--no-bulk");
+        if (!commandLine.hasNext()) {
+            if (!runSuite(bulk)) {
+                System.exit(1);
+            }
+            return;
+        }
+        int depth = Integer.parseInt(commandLine.next());
+        if (depth < 1) {
+            System.out.println("Depth must be at least 1");
+            System.exit(1);
+        }
+        Board board = new Board(commandLine.fen());
+        long startTime = System.nanoTime();
+        long nodes = new Perft(board, depth, bulk).divide(depth);
+        long nanos = System.nanoTime() - startTime;
+        System.out.format("\nNodes searched: %d\n%.3fs, %s\n",
+                nodes, nanos / 1e9, nodesPerSecond(nodes, nanos));
+    }
+}
@@ -7,9 +7,16 @@ import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import java.util.ArrayList;
 
 public abstract class Piece {
-    private static final TextureRegion[][] sprites = TextureRegion.split(
-            new Texture("Pieces.png"), 333, 334
-    );
+    // piece indices, also used for sprites, Zobrist keys and bitboards
+    public static final int KING = 0;
+    public static final int QUEEN = 1;
+    public static final int BISHOP = 2;
+    public static final int KNIGHT = 3;
+    public static final int ROOK = 4;
+    public static final int PAWN = 5;
+    public static final int NUM_TYPES = 6;
+    // loaded on first render, so boards can be used without a GL context
+    private static TextureRegion[][] sprites;
     private static final float RENDER_SCALE = 0.27f;
     public final Board board;
     public final Side side;
@@ -25,7 +32,7 @@ public abstract class Piece {
         this.side = side;
         this.value = value;
         this.pieceIndex = pieceIndex;
-        this.square = new Square(row, col);
+        this.square = Square.at(Bitboard.index(row, col));
         this.unmoved = unmoved;
         this.board = board;
         this.arrayIndex = board.getIndex(this);
@@ -65,230 +72,68 @@ public abstract class Piece {
 
     public abstract boolean validMoveExists();
 
-    public abstract ArrayList<Move> getValidMoves();
+    // adds this piece's legal moves to 'moves' from index 'count', returns
+    // the new count
+    public abstract int generateMoves(int[] moves, int count);
 
-    protected boolean isCheckingOrthogonally() {
-        Square kingSquare = opponentKingSquare();
-        int rowDiff = kingSquare.rowDiff(square);
-        int colDiff = kingSquare.colDiff(square);
-        if (rowDiff == 0) {
-            // checking horizontally
-            int lowerCol = Math.min(kingSquare.col, square.col);
-            for (int i = 1; i < kingSquare.colDiff(square); i++) {
-                if (board.contentsAt(square.row, lowerCol + i) != null) {
-                    return false;
-                }
-            }
-            return true;
-        } else if (colDiff == 0) {
-            // checking vertically
-            int lowerRow = Math.min(kingSquare.row, square.row);
-            for (int i = 1; i < kingSquare.rowDiff(square); i++) {
-                if (board.contentsAt(lowerRow + i, square.col) != null) {
-                    return false;
-                }
-            }
-            return true;
+    public ArrayList<Move> getValidMoves() {
+        int[] moves = new int[PackedMove.MAX_MOVES];
+        int count = generateMoves(moves, 0);
+        ArrayList<Move> validMoves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            validMoves.add(Move.unpack(board, moves[i]));
         }
-        return false;
+        return validMoves;
+    }
+
+    protected boolean isCheckingOrthogonally() {
+        long attacks = SlidingAttacks.rookAttacks(
+                square.index(), board.getOccupied());
+        return (attacks & Bitboard.bit(opponentKingSquare())) != 0;
     }
 
     protected boolean isCheckingDiagonally() {
-        Square kingSquare = opponentKingSquare();
-        int rowDiff = kingSquare.rowDiff(square());
-        int colDiff = kingSquare.colDiff(square());
-        if (colDiff == rowDiff) {
-            int checkRow, checkCol;
-            for (int i = 1; i < rowDiff; i++) {
-                // check all intervening squares on the diagonal are empty
-                checkRow = (i*(kingSquare.row - square.row)/rowDiff) + square.row;
-                checkCol = (i*(kingSquare.col - square.col)/colDiff) + square.col;
-                if (board.contentsAt(checkRow, checkCol) != null) {
-                    return false;
-                }
-            }
-            return true;
-        }
-        return false;
+        long attacks = SlidingAttacks.bishopAttacks(
+                square.index(), board.getOccupied());
+        return (attacks & Bitboard.bit(opponentKingSquare())) != 0;
     }
 
-    public ArrayList<Move> getValidOrthogonalMoves() {
-        ArrayList<Move> validMoves = new ArrayList<>();
-        Move move;
-        Square to;
-        // moving down or up
-        int testRow;
-        for (int i = 0; i < 2; i++) {
-            testRow = square.row + ((i==0) ? 1 : -1);
-            while (0 <= testRow && testRow <= 7 &&
-                    (board.contentsAt(testRow, square.col) == null)) {
-                to = new Square(testRow, square.col);
-                move = new Move(this, to);
-                if (!board.wouldBeInCheck(move, side)) {
-                    validMoves.add(move);
-                }
-                testRow += (i==0) ? 1 : -1;
-            }
-            if (0 <= testRow && testRow <= 7 &&
-                    board.contentsAt(testRow, square.col) != null &&
-                    board.contentsAt(testRow, square.col).side != side) {
-                to = new Square(testRow, square.col);
-                move = new Move(this, to) ;
-                if (!board.wouldBeInCheck(move, side)) {
-                    validMoves.add(move);
-                }
-            }
-        }
-        // moving right or left
-        int testCol;
-        for (int i = 0; i < 2; i++) {
-            testCol = square.col + ((i == 0) ? 1 : -1);
-            while (0 <= testCol && testCol <= 7 &&
-                    (board.contentsAt(square.row, testCol) == null)) {
-                to = new Square(square.row, testCol);
-                move = new Move(this, to) ;
-                if (!board.wouldBeInCheck(move, side)) {
-                    validMoves.add(move);
-                }
-                testCol += (i==0) ? 1 : -1;
-            }
-            if (0 <= testCol && testCol <= 7 &&
-                    board.contentsAt(square.row, testCol) != null &&
-                    board.contentsAt(square.row, testCol).side != side) {
-                to = new Square(square.row, testCol);
-                move = new Move(this, to) ;
-                if (!board.wouldBeInCheck(move, side)) {
-                    validMoves.add(move);
-                }
-            }
-        }
-        return validMoves;
+    public boolean validOrthogonalMoveExists() {
+        return validMoveToExists(SlidingAttacks.rookAttacks(
+                square.index(), board.getOccupied()));
     }
 
-    public ArrayList<Move> getValidDiagonalMoves() {
-        ArrayList<Move> validMoves = new ArrayList<>();
-        Move move;
-        Square to;
-        int testRow, testCol;
-        // each loop considers one diagonal
-        // boolean expressions decide which direction piece will 'move'
-        for (int i = 0; i < 4; i++) {
-            int verticalMovement   = (  (i <= 1)   ? 1 : -1);
-            int horizontalMovement = ((i % 2 == 0) ? 1 : -1);
-            testRow = square.row + verticalMovement;
-            testCol = square.col + horizontalMovement;
-            while (0 <= testRow && testRow <= 7 && 0 <= testCol && testCol <= 7 &&
-                    (board.contentsAt(testRow, testCol) == null)) {
-                to = new Square(testRow, testCol);
-                move = new Move(this, to) ;
-                if (!board.wouldBeInCheck(move, side)) {
-                    validMoves.add(move);
-                }
-                testRow += verticalMovement;
-                testCol += horizontalMovement;
-            }
-            // once loop is broken, check if it can reach that square on which
-            // the loop broke, might be able to take that piece
-            if (0 <= testRow && testRow <= 7 && 0 <= testCol && testCol <= 7 &&
-                    board.contentsAt(testRow, testCol) != null &&
-                    board.contentsAt(testRow, testCol).side != side) {
-                to = new Square(testRow, testCol);
-                move = new Move(this, to) ;
-                if (!board.wouldBeInCheck(move, side)) {
-                    validMoves.add(move);
-                }
-            }
+    public boolean validDiagonalMoveExists() {
+        return validMoveToExists(SlidingAttacks.bishopAttacks(
+                square.index(), board.getOccupied()));
+    }
+
+    // legal moves to any of the attacked squares not occupied by our side
+    protected int addMovesTo(long attacks, int[] moves, int count) {
+        int from = square.index();
+        long targets = attacks & ~board.getOccupancy(side) &
+                board.legalTargets(this);
+        while (targets != 0) {
+            moves[count++] = PackedMove.encode(from, Bitboard.first(targets));
+            targets &= targets - 1;
         }
-        return validMoves;
+        return count;
     }
 
-    public boolean validOrthogonalMoveExists() {
-        Move move;
-        Square to;
-        // moving down or up
-        int testRow;
-        for (int i = 0; i < 2; i++) {
-            testRow = square.row + ((i==0) ? 1 : -1);
-            while (0 <= testRow && testRow <= 7 &&
-                    (board.contentsAt(testRow, square.col) == null)) {
-                to = new Square(testRow, square.col);
-                move = new Move(this, to);
-                if (!board.wouldBeInCheck(move, side)) {
-                    return true;
-                }
-                testRow += (i==0) ? 1 : -1;
-            }
-            if (0 <= testRow && testRow <= 7 &&
-                    board.contentsAt(testRow, square.col) != null &&
-                    board.contentsAt(testRow, square.col).side != side) {
-                to = new Square(testRow, square.col);
-                move = new Move(this, to) ;
-                if (!board.wouldBeInCheck(move, side)) {
-                    return true;
-                }
-            }
-        }
-        // moving right or left
-        int testCol;
-        for (int i = 0; i < 2; i++) {
-            testCol = square.col + ((i == 0) ? 1 : -1);
-            while (0 <= testCol && testCol <= 7 &&
-                    (board.contentsAt(square.row, testCol) == null)) {
-                to = new Square(square.row, testCol);
-                move = new Move(this, to) ;
-                if (!board.wouldBeInCheck(move, side)) {
-                    return true;
-                }
-                testCol += (i==0) ? 1 : -1;
-            }
-            if (0 <= testCol && testCol <= 7 &&
-                    board.contentsAt(square.row, testCol) != null &&
-                    board.contentsAt(square.row, testCol).side != side) {
-                to = new Square(square.row, testCol);
-                move = new Move(this, to) ;
-                if (!board.wouldBeInCheck(move, side)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+    protected boolean validMoveToExists(long attacks) {
+        return (attacks & ~board.getOccupancy(side) &
+                board.legalTargets(this)) != 0;
     }
 
-    public boolean validDiagonalMoveExists() {
-        Move move;
-        Square to;
-        int testRow, testCol;
-        // each loop considers one diagonal
-        // boolean expressions decide which direction piece will 'move'
-        for (int i = 0; i < 4; i++) {
-            int verticalMovement   = (  (i <= 1)   ? 1 : -1);
-            int horizontalMovement = ((i % 2 == 0) ? 1 : -1);
-            testRow = square.row + verticalMovement;
-            testCol = square.col + horizontalMovement;
-            while (0 <= testRow && testRow <= 7 && 0 <= testCol && testCol <= 7 &&
-                    (board.contentsAt(testRow, testCol) == null)) {
-                to = new Square(testRow, testCol);
-                move = new Move(this, to) ;
-                if (!board.wouldBeInCheck(move, side)) {
-                    return true;
-                }
-                testRow += verticalMovement;
-                testCol += horizontalMovement;
-            }
-            if (0 <= testRow && testRow <= 7 && 0 <= testCol && testCol <= 7 &&
-                    board.contentsAt(testRow, testCol) != null &&
-                    board.contentsAt(testRow, testCol).side != side) {
-                to = new Square(testRow, testCol);
-                move = new Move(this, to) ;
-                if (!board.wouldBeInCheck(move, side)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+    // whether moving to this square keeps our King safe, for non-King pieces
+    protected boolean isLegalTarget(Square to) {
+        return (board.legalTargets(this) & Bitboard.bit(to)) != 0;
     }
 
     protected void render(SpriteBatch batch, boolean flipped) {
+        if (sprites == null) {
+            sprites = TextureRegion.split(new Texture("Pieces.png"), 333, 334);
+        }
         if (!taken) {
             Point location = square.getLocation(true, flipped);
             TextureRegion image = sprites[side==Side.WHITE ? 0 : 1][pieceIndex];
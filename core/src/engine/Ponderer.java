@@ -0,0 +1,52 @@
+package engine;
+
+/* Pondering: while the opponent thinks, search for our move after the
+   reply we expect from them, the one predicted by our last search. If they
+   play it, the search carries on as the search for our move, with the time
+   already spent counting towards it; if not, it is abandoned. Either way
+   the transposition table keeps what was found */
+public class Ponderer {
+    private static boolean enabled = true;
+    private final int expectedReply;
+    private final SearchJob job;
+    private boolean hit = false;
+
+    // 'timeManager' should be set to ponder
+    public Ponderer(Board board, Move expectedReply, TimeManager timeManager) {
+        this.expectedReply = expectedReply.packed;
+        Board ponderBoard = new Board(board);
+        Move.unpack(ponderBoard, this.expectedReply).make();
+        job = new SearchJob(new Scorer(new Node(ponderBoard), timeManager));
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Ponderer.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean expects(Move reply) {
+        return reply.packed == expectedReply;
+    }
+
+    public void ponderHit() {
+        hit = true;
+        job.ponderHit();
+    }
+
+    public boolean isHit() {
+        return hit;
+    }
+
+    // after a hit, the search carries on as the search for our move
+    public SearchJob getJob() {
+        assert hit;
+        return job;
+    }
+
+    public void stop() {
+        job.cancel();
+    }
+}
@@ -4,38 +4,10 @@ public class Promotion extends Move {
 
     public final Piece promoteTo;
 
-    public Promotion(Piece piece, Square to, Piece promotedTo) {
-        super(piece, to);
-        this.promoteTo = promotedTo;
-    }
-
-    // Copy  constructor for new board
-    public Promotion(Promotion promotion, Board newBoard) {
-        super(promotion, newBoard);
-        this.promoteTo = promotion.promoteTo.makeCopy(newBoard);
-    }
-
-    @Override
-    public Move makeCopy(Board newBoard) {
-        return new Promotion(this, newBoard);
-    }
-
-    @Override
-    public void make() {
-        super.make();
-        board.setContents(piece.square(), promoteTo);
-        board.getPieces(side)[piece.arrayIndex] = promoteTo;
-        board.zobristTracker.update(to, piece);
-        board.zobristTracker.update(to, promoteTo);
-    }
-
-    @Override
-    public void undo() {
-        board.getPieces(side)[piece.arrayIndex] = piece;
-        super.undo();
-        board.zobristTracker.update(to, piece);
-        board.zobristTracker.update(to, promoteTo);
-        assert board.getLastMove() == null || board.getLastMove().side == side.opponent();
+    public Promotion(Piece piece, Square to, int promoteToIndex) {
+        super(piece, to, piece.board.contentsAt(to), PackedMove.promotion(
+                piece.square().index(), to.index(), promoteToIndex));
+        this.promoteTo = ((Pawn) piece).promotedTo(promoteToIndex);
     }
 
     @Override
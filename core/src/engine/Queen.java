@@ -1,10 +1,8 @@
 package engine;
 
-import java.util.ArrayList;
-
 public class Queen extends Piece {
     public static final int value = 9;
-    private static final int pieceIndex = 1;
+    private static final int pieceIndex = QUEEN;
 
     public Queen(Side side, int row, int col, boolean unmoved, Board board) {
         super(side, value, pieceIndex, row, col, unmoved, board);
@@ -31,15 +29,15 @@ public class Queen extends Piece {
     }
 
     @Override
-    public ArrayList<Move> getValidMoves() {
-        ArrayList<Move> validMoves = getValidOrthogonalMoves();
-        validMoves.addAll(getValidDiagonalMoves());
-        return validMoves;
+    public int generateMoves(int[] moves, int count) {
+        return addMovesTo(SlidingAttacks.queenAttacks(
+                square().index(), board.getOccupied()), moves, count);
     }
 
     @Override
     public boolean validMoveExists() {
-        return validDiagonalMoveExists() || validOrthogonalMoveExists();
+        return validMoveToExists(SlidingAttacks.queenAttacks(
+                square().index(), board.getOccupied()));
     }
 
 }
@@ -4,10 +4,9 @@ import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 
 public class RenderedBoard extends Board {
-    private static final String standardSetup =
-            "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
     private static final Texture IMAGE = new Texture("board/board.png");
     private static final Texture PINK_SQR = new Texture("board/pink_sqr.png");
     private static final Texture BLUE_SQR = new Texture("board/blue_sqr.png");
@@ -21,15 +20,17 @@ public class RenderedBoard extends Board {
     private Move clickedMove;
     private boolean stalemated = false;
     private boolean checkmated = false;
+    // null when each move is given a fixed time instead
+    private GameClock clock;
+    // searching on the opponent's time, if anything
+    private Ponderer ponderer;
 
     public RenderedBoard() {
-        super();
-        initialise(standardSetup);
+        super(STANDARD_SETUP);
     }
 
     public RenderedBoard(String fen) {
-        super();
-        initialise(fen);
+        super(fen);
     }
 
     public void render(SpriteBatch batch, boolean invert) {
@@ -110,6 +111,7 @@ public class RenderedBoard extends Board {
     }
 
     public void undoLastMove() {
+        stopPondering();
         if (getLastMove() != null) {
             getLastMove().undo();
             focusedOn = null;
@@ -120,11 +122,80 @@ public class RenderedBoard extends Board {
         }
     }
 
-    public void computeAndMakeMove() {
-        finaliseMove(super.computeMove());
+    // starts the clocks, if the game is timed, for the side to move
+    public void startClock() {
+        clock = GameClock.forNewGame();
+    }
+
+    /* starts searching for the move of the side to move, on another thread
+       so the board can still be drawn. If the opponent played the reply
+       pondered on, that search carries on as this one. The move is made by
+       finishComputingMove once the job is done */
+    public SearchJob startComputingMove() {
+        if (ponderer != null && ponderer.isHit()) {
+            SearchJob job = ponderer.getJob();
+            ponderer = null;
+            return job;
+        }
+        // the pondered search wasn't for this position
+        stopPondering();
+        System.out.println("Computing move:");
+        return startSearch(timeManager(nextTurn), 1);
+    }
+
+    public void finishComputingMove(SearchJob job) {
+        Move bestMove = job.getBestMove();
+        Move move;
+        if (bestMove != null) {
+            move = bestMove.makeCopy(this);
+        } else {
+            // the search failed, or the game ended while it ran
+            move = getAllValidMoves().stream()
+                    .max(Comparator.comparingInt(Move::heuristicScore))
+                    .orElse(null);
+            if (move == null) {
+                return;
+            }
+            System.out.println("No move was found ; using heuristic");
+        }
+        move.printAnticipatedSequence();
+        finaliseMove(move);
+    }
+
+    public void startPondering() {
+        Move lastMove = getLastMove();
+        if (!Ponderer.isEnabled() || gameFinished() || lastMove == null ||
+                lastMove.getSuccessor() == null) {
+            return;
+        }
+        stopPondering();
+        TimeManager timeManager = timeManager(nextTurn.opponent());
+        timeManager.ponder();
+        ponderer = new Ponderer(this, lastMove.getSuccessor(), timeManager);
+    }
+
+    public void stopPondering() {
+        if (ponderer != null) {
+            ponderer.stop();
+            ponderer = null;
+        }
+    }
+
+    private TimeManager timeManager(Side side) {
+        return clock != null ? clock.timeManager(side) : new TimeManager();
     }
 
     public void finaliseMove(Move move) {
+        if (ponderer != null) {
+            if (ponderer.expects(move)) {
+                ponderer.ponderHit();
+            } else {
+                stopPondering();
+            }
+        }
+        if (clock != null) {
+            clock.endTurn(nextTurn);
+        }
         move.make();
         focusedOn = null;
         clickedMove = null;
@@ -141,7 +212,8 @@ public class RenderedBoard extends Board {
             }
         } else if (!stalemated) {
             checkImplicitStalemate();
-            if (halfmoveClock >= 50) {
+            // threefold repetition
+            if (halfmoveClock >= 50 || repetitions() >= 2) {
                 declareStalemate();
             }
         }
@@ -189,171 +261,12 @@ public class RenderedBoard extends Board {
         );
     }
 
-    public boolean gameFinished() {
-        return checkmated || stalemated;
+    public GameClock getClock() {
+        return clock;
     }
 
-    private void initialise(String fen) {
-        String[] fenComponents = fen.split(" ");
-        String[] boardRows = fenComponents[0].split("/");
-        int charInRow;
-        ArrayList<Piece> whitePieces = new ArrayList<>(16);
-        ArrayList<Piece> blackPieces = new ArrayList<>(16);
-        for (int row = 0; row < SIZE; row++) {
-            charInRow = 0;
-            for (int col = 0; col < SIZE; col++) {
-                char currentChar = boardRows[row].charAt(charInRow);
-                if (Character.isDigit(currentChar)) {
-                    col += Character.getNumericValue(currentChar) - 1;
-                } else {
-                    Side pieceSide = (Character.isUpperCase(currentChar)) ?
-                            Side.WHITE : Side.BLACK;
-                    String pieceType = Character
-                            .toString(currentChar)
-                            .toLowerCase();
-                    switch (pieceType) {
-                        case "k":
-                            King newKing;
-                            if (pieceSide == Side.WHITE) {
-                                newKing = new King(Side.WHITE, row, col, this);
-                                whitePieces.add(newKing);
-                                setWhiteKing(newKing);
-                            } else {
-                                newKing = new King(Side.BLACK, row, col, this);
-                                blackPieces.add(newKing);
-                                setBlackKing(newKing);
-                            }
-                            break;
-                        case "q":
-                            if (pieceSide == Side.WHITE) {
-                                whitePieces.add(new Queen(
-                                        Side.WHITE, row, col, true, this
-                                ));
-                            } else {
-                                blackPieces.add(new Queen(
-                                        Side.BLACK, row, col, true, this
-                                ));
-                            }
-                            break;
-                        case "r":
-                            if (pieceSide == Side.WHITE) {
-                                whitePieces.add(new Rook(Side.WHITE, row, col, this));
-                            } else {
-                                blackPieces.add(new Rook(Side.BLACK, row, col, this));
-                            }
-                            break;
-                        case "b":
-                            if (pieceSide == Side.WHITE) {
-                                whitePieces.add(new Bishop(
-                                        Side.WHITE, row, col, true, this
-                                ));
-                            } else {
-                                blackPieces.add(new Bishop(
-                                        Side.BLACK, row, col, true, this
-                                ));
-                            }
-                            break;
-                        case "n":
-                            if (pieceSide == Side.WHITE) {
-                                whitePieces.add(new Knight(
-                                        Side.WHITE, row, col, true, this
-                                ));
-                            } else {
-                                blackPieces.add(new Knight(
-                                        Side.BLACK, row, col, true, this
-                                ));
-                            }
-                            break;
-                        case "p":
-                            if (pieceSide == Side.WHITE) {
-                                whitePieces.add(new Pawn(Side.WHITE, row, col, this));
-                            } else {
-                                blackPieces.add(new Pawn(Side.BLACK, row, col, this));
-                            }
-                            break;
-                        default:
-                            assert false : "bad fen ; "+ pieceType + " invalid";
-                            break;
-                    }
-                }
-                charInRow++;
-            }
-        }
-        this.whitePieces = new Piece[whitePieces.size()];
-        this.blackPieces = new Piece[blackPieces.size()];
-        for (int i = 0; i < whitePieces.size(); i++) {
-            this.whitePieces[i] = whitePieces.get(i);
-        }
-        for (int i = 0; i < blackPieces.size(); i++) {
-            this.blackPieces[i] = blackPieces.get(i);
-        }
-        nextTurn = (fenComponents[1].equals("w")) ? Side.WHITE : Side.BLACK;
-        // what castling is allowed
-        if (!fenComponents[2].contains("K")) {
-            if (contentsAt(7, 7) instanceof Rook) {
-                contentsAt(7, 7).setUnmoved(false);
-            }
-        } else {
-            assert contentsAt(7, 7) instanceof Rook;
-            assert contentsAt(7, 4) instanceof King;
-            assert contentsAt(7, 7).isUnmoved();
-            assert contentsAt(7, 4).isUnmoved();
-        }
-        if (!fenComponents[2].contains("Q")) {
-            if (contentsAt(7, 0) instanceof Rook) {
-                contentsAt(7, 0).setUnmoved(false);
-            }
-        } else {
-            assert contentsAt(7, 0) instanceof Rook;
-            assert contentsAt(7, 4) instanceof King;
-            assert contentsAt(7, 0).isUnmoved();
-            assert contentsAt(7, 4).isUnmoved();
-        }
-        if (!fenComponents[2].contains("k")) {
-            if (contentsAt(0, 7) instanceof Rook) {
-                contentsAt(0, 7).setUnmoved(false);
-            }
-        } else {
-            assert contentsAt(0, 7) instanceof Rook;
-            assert contentsAt(0, 4) instanceof King;
-            assert contentsAt(0, 7).isUnmoved();
-            assert contentsAt(0, 4).isUnmoved();
-        }
-        if (!fenComponents[2].contains("q")) {
-            if (contentsAt(0, 0) instanceof Rook) {
-                contentsAt(0, 0).setUnmoved(false);
-            }
-        } else {
-            assert contentsAt(0, 0) instanceof Rook;
-            assert contentsAt(0, 4) instanceof King;
-            assert contentsAt(0, 0).isUnmoved();
-            assert contentsAt(0, 4).isUnmoved();
-        }
-        if (!fenComponents[3].equals("-")) {
-            // previous move allows en passant
-            // we need to fabricate the previous move, so en passant is allowed
-            char colChar = fenComponents[3].charAt(0);
-            char rowChar = fenComponents[3].charAt(1);
-            int col = colChar - 'a';
-            int row = 8 - Character.getNumericValue(rowChar);
-            int lastMoveToRow = (row == 2) ? 3 : 4;
-            int lastMoveFromRow = (row == 2) ? 1 : 6;
-            Square movedTo = new Square(lastMoveToRow, col);
-            Square movedFrom = new Square(lastMoveFromRow, col);
-            Piece movedPiece = contentsAt(lastMoveToRow, col);
-            movedPiece.setSquare(movedFrom);
-            setContents(movedFrom, movedPiece);
-            setContents(movedTo, null);
-            movedPiece.setUnmoved(true);
-            Move lastMove = new Move(movedPiece, movedTo);
-            updateNextTurn();
-            finaliseMove(lastMove);
-        }
-        halfmoveClock = Integer.parseInt(fenComponents[4]);
-        fullmoveNumber = Integer.parseInt(fenComponents[5]);
-        assert toFen().equals(fen) :
-                "\nResulting fen: " + fen +
-                        "\nExpected fen:  " + toFen();
+    public boolean gameFinished() {
+        return checkmated || stalemated;
     }
 
     public static void dispose() {
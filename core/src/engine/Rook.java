@@ -1,10 +1,8 @@
 package engine;
 
-import java.util.ArrayList;
-
 public class Rook extends Piece {
     private static final int value = 5;
-    private static final int pieceIndex = 4;
+    private static final int pieceIndex = ROOK;
 
     public Rook(Side side, int row, int col, Board board) {
         super(side, value, pieceIndex, row, col,
@@ -33,8 +31,9 @@ public class Rook extends Piece {
     }
 
     @Override
-    public ArrayList<Move> getValidMoves() {
-        return getValidOrthogonalMoves();
+    public int generateMoves(int[] moves, int count) {
+        return addMovesTo(SlidingAttacks.rookAttacks(
+                square().index(), board.getOccupied()), moves, count);
     }
 
     @Override
@@ -0,0 +1,62 @@
+package engine;
+
+/* Values of positions, from the point of view of the side to move, with a
+   pawn worth 1000. Being checkmated 'ply' plies from the root of a search
+   scores -MATE + ply, so a quicker mate scores higher and the slower of two
+   is never preferred. These stay far from the int limits, so windows around
+   them can be widened or negated without overflowing.
+
+   A mate score is only relative to the root of the search that found it, so
+   the transposition table stores it relative to the position itself, and it
+   is converted back for whichever ply reads it */
+public final class Score {
+    public static final int MATE = 1_000_000;
+    // bound on every score, for a full window
+    public static final int INFINITY = MATE + 1;
+    // scores this close to MATE are mates; no search gets this deep
+    private static final int MAX_MATE_PLY = 1000;
+
+    private Score() {}
+
+    // the side to move is checkmated, this many plies from the root
+    public static int mated(int ply) {
+        return -MATE + ply;
+    }
+
+    public static boolean isWin(int value) {
+        return value >= MATE - MAX_MATE_PLY && value <= MATE;
+    }
+
+    public static boolean isLoss(int value) {
+        return value <= -MATE + MAX_MATE_PLY && value >= -MATE;
+    }
+
+    public static boolean isMate(int value) {
+        return isWin(value) || isLoss(value);
+    }
+
+    // plies until the mate, from wherever the score is relative to
+    public static int matePlies(int value) {
+        return MATE - Math.abs(value);
+    }
+
+    // a value found 'ply' plies from the root, as stored for the position
+    public static int toTable(int value, int ply) {
+        if (isWin(value)) {
+            return value + ply;
+        } else if (isLoss(value)) {
+            return value - ply;
+        }
+        return value;
+    }
+
+    // a stored value, as seen from 'ply' plies below the root
+    public static int fromTable(int value, int ply) {
+        if (isWin(value)) {
+            return value - ply;
+        } else if (isLoss(value)) {
+            return value + ply;
+        }
+        return value;
+    }
+}
@@ -1,61 +1,152 @@
 package engine;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 
-// Scorer class for performing minimax - copies state to a clean board
-public class Scorer implements Runnable {
-    private static final long TIME_CAP_MILLIS = 5000;
+// Scorer class for performing minimax - copies state to clean boards
+public class Scorer {
     private static final int MIN_DEPTH = 2;
+    // deeper than any search gets in a game, but stops one that can't end
+    // sooner, e.g. when every line is a known draw
+    private static final int MAX_DEPTH = 64;
+    // initial half-width of the aspiration window, a twentieth of a pawn
+    private static final int ASPIRATION_WINDOW = 50;
     private static int totalComputeMoveDepth = 0;
     private static int numComputedMoves = 0;
+    private static int numThreads = Runtime.getRuntime().availableProcessors();
 
     private final Node originalNode;
-    private final Node scoringNode;
+    private final TimeManager timeManager;
+    // best moves to find, each with its own score and continuation
+    private final int numLines;
+    private final Searcher[] searchers;
     private final long startTime;
+    // deepest completed result, bound to the original board
+    private volatile Move bestMove;
+    // the same search's best moves, best first, for Multi-PV
+    private volatile Move[] bestLines;
+    private int bestDepth = 0;
+    // consecutive depths that bestMove has been the best move for
+    private int stableDepths = 0;
+    private int runningSearchers;
 
     public Scorer(Node node) {
+        this(node, new TimeManager());
+    }
+
+    public Scorer(Node node, TimeManager timeManager) {
+        this(node, timeManager, 1);
+    }
+
+    public Scorer(Node node, TimeManager timeManager, int numLines) {
+        assert numLines >= 1;
         this.originalNode = node;
-        this.scoringNode = new Node(new Board(node.board));
+        this.timeManager = timeManager;
+        this.numLines = numLines;
         startTime = System.currentTimeMillis();
+        Node.newSearch();
+        searchers = new Searcher[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            searchers[i] = new Searcher(i);
+        }
+    }
+
+    // number of threads searching each move, all cores by default
+    public static void setNumThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException(
+                    "At least one search thread is needed, not " + numThreads);
+        }
+        Scorer.numThreads = numThreads;
+    }
+
+    public static int getNumThreads() {
+        return numThreads;
     }
 
     public Move getBestMove() {
-        assert scoringNode.isRoot;
         if (originalNode.board.noValidMoveExists()) {
             return null;
         }
-        performLookahead();
-        if (originalNode.getBestMove() == null) {
+        // endgames in the tablebase need no search at all
+        Move[] tablebaseLines =
+                Tablebase.bestMoves(originalNode.board, numLines);
+        if (tablebaseLines != null) {
+            bestMove = tablebaseLines[0];
+            bestLines = tablebaseLines;
+            System.out.format("Best move from the tablebase: %s\n", bestMove);
+        } else {
+            performLookahead();
+        }
+        if (bestMove == null) {
             System.out.println("No successor was found ; using heuristic");
-            Move bestMove = originalNode.board.getAllValidMoves().stream()
+            bestMove = originalNode.board.getAllValidMoves().stream()
                     .max(Comparator.comparingInt(Move::heuristicScore))
                     .orElse(null);
             assert bestMove != null;
             bestMove.setScore(bestMove.heuristicScore());
-            originalNode.setBestMove(bestMove);
+            bestMove.setEvaluationTracker(new EvaluationTracker(0));
         }
         updateStats();
-        return originalNode.getBestMove();
+        return bestMove;
+    }
+
+    /* Multi-PV: the best 'numLines' moves, best first, or fewer if there
+       aren't that many. Each line after the first is searched from the root
+       with the better moves left out, so all of them share one search and
+       its transposition table */
+    public List<Move> getBestMoves() {
+        Move best = getBestMove();
+        if (best == null) {
+            return Collections.emptyList();
+        } else if (bestLines == null || bestLines[0] != best) {
+            // only the heuristic's move
+            return Collections.singletonList(best);
+        }
+        return Arrays.asList(bestLines);
     }
 
     private void performLookahead() {
-        Thread thread = new Thread(this);
-        thread.start();
-        // before time limit is exceeded or max depth is reached
+        Thread[] threads = new Thread[searchers.length];
+        runningSearchers = searchers.length;
+        for (int i = 0; i < searchers.length; i++) {
+            threads[i] = SearchJob.startThread(searchers[i]);
+        }
+        // until the hard limit, unless a finished iteration ends it sooner
         try {
-            Thread.sleep(TIME_CAP_MILLIS);
-            thread.interrupt();
-            // sleep in case we interrupted while best move is being recorded
-            Thread.sleep(5);
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
-        if (originalNode.getBestMove() != null) {
+            synchronized (this) {
+                while (!timeManager.isStopped() && runningSearchers > 0) {
+                    // read once, as the time can run out in between
+                    long remaining = timeManager.millisUntilHardLimit();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    wait(remaining);
+                }
+            }
+            timeManager.stop();
+            // searchers notice the stop at their next node
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            // give up waiting, and go with the deepest search finished
+            timeManager.stop();
+            Thread.currentThread().interrupt();
+        }
+        if (bestMove != null) {
+            // statistics of each thread's last iteration, complete or not
+            EvaluationTracker ET = new EvaluationTracker(bestDepth);
+            for (Searcher searcher : searchers) {
+                ET.add(searcher.scoringNode.getEvaluationTracker());
+            }
+            bestMove.setEvaluationTracker(ET);
             System.out.format("Depth reached: %d\n",
-                    originalNode.getBestMove().getEvaluationTracker().getDepth()
+                    bestMove.getEvaluationTracker().getDepth()
             );
-            System.out.format("Best move: %s\n", originalNode.getBestMove());
+            System.out.format("Best move: %s\n", bestMove);
         } else {
             System.out.println("Depth reached: 0");
         }
@@ -64,7 +155,7 @@ public class Scorer implements Runnable {
     private void updateStats() {
         long endTime = System.currentTimeMillis();
         double timeToScoreLastMoveSecs = (endTime - startTime) / 1000.0;
-        EvaluationTracker ET = originalNode.getBestMove().getEvaluationTracker();
+        EvaluationTracker ET = bestMove.getEvaluationTracker();
         ET.setTimeTaken(timeToScoreLastMoveSecs);
         totalComputeMoveDepth += ET.getDepth();
         numComputedMoves ++;
@@ -78,39 +169,193 @@ public class Scorer implements Runnable {
         }
     }
 
-    @Override
-    public void run() {
-        Move bestMove;
-        long moveStartTime;
-        int depth = MIN_DEPTH, negamax;
-        while (!Thread.currentThread().isInterrupted()) {
-            System.out.format("Depth: %d\n", depth);
+    /* keeps the deepest result, the first to finish for a given depth, and
+       stops the search once it has done enough: when time is nearly up, or
+       when a forced mate has been seen to the end */
+    private synchronized void recordResult(Move[] lines, int depth) {
+        if (depth <= bestDepth) {
+            return;
+        }
+        Move move = lines[0];
+        if (bestMove != null && move.packed == bestMove.packed) {
+            stableDepths++;
+        } else {
+            stableDepths = 0;
+        }
+        bestDepth = depth;
+        bestMove = move;
+        bestLines = lines;
+        if (timeManager.iterationsSuffice(stableDepths) ||
+                (Score.isMate(move.getScore()) &&
+                        Score.matePlies(move.getScore()) <= depth)) {
+            timeManager.stop();
+            notifyAll();
+        }
+    }
 
-            moveStartTime = System.currentTimeMillis();
-            Node.resetEvaluationTracker(depth);
-            negamax = scoringNode.negamax(
-                    depth,
-                    -Integer.MAX_VALUE,
-                    Integer.MAX_VALUE
-            );
-            if (Thread.currentThread().isInterrupted()) {
-                return;
-            }
-            // copy bestMove but set board to the actual game board
-            bestMove = scoringNode.getBestMove().makeCopy(originalNode.board);
-            assert negamax == bestMove.getScore();
-            bestMove.setEvaluationTracker(Node.getEvaluationTracker());
-            originalNode.setBestMove(bestMove);
+    // best move of the deepest search finished so far, for showing progress
+    public Move getBestMoveSoFar() {
+        return bestMove;
+    }
+
+    public synchronized int getDepthSoFar() {
+        return bestDepth;
+    }
 
-            System.out.format("\tMove time: %.3f, Total time: %.3f\n",
-                    (System.currentTimeMillis() - moveStartTime)/1000.0,
-                    (System.currentTimeMillis() - startTime)/1000.0);
-            System.out.format("\tLeaf-nodes searched: %d\n",
-                    bestMove.getEvaluationTracker().getLeafNodes());
-            System.out.format("\tTranspositions     : %d\n",
-                    bestMove.getEvaluationTracker().getTranspositions());
-            depth++;
+    // the move pondered on was played, so the limits now apply
+    public synchronized void ponderHit() {
+        timeManager.ponderHit();
+        if (bestMove != null && timeManager.iterationsSuffice(stableDepths)) {
+            timeManager.stop();
         }
+        notifyAll();
+    }
+
+    // getBestMove then returns as soon as the searchers have stopped
+    public synchronized void stop() {
+        timeManager.stop();
+        notifyAll();
+    }
+
+    private synchronized void searcherFinished() {
+        runningSearchers--;
+        notifyAll();
     }
 
+    /* Lazy SMP: every thread searches the same root on its own board, and
+       they share only the transposition table. Threads that reach a position
+       first leave results there for the others, so together they get deeper
+       than one thread would. Half of the helpers start a ply deeper so the
+       threads don't all search in lockstep */
+    private class Searcher implements Runnable {
+        private final int id;
+        private final Node scoringNode;
+
+        public Searcher(int id) {
+            this.id = id;
+            this.scoringNode =
+                    new Node(new Board(originalNode.board), timeManager);
+        }
+
+        @Override
+        public void run() {
+            try {
+                search();
+            } finally {
+                searcherFinished();
+            }
+        }
+
+        private void search() {
+            Move bestMove = null;
+            long moveStartTime;
+            int depth = MIN_DEPTH + id % 2, negamax = 0;
+            while (!timeManager.isStopped() && depth <= MAX_DEPTH) {
+                if (id == 0) {
+                    System.out.format("Depth: %d\n", depth);
+                }
+                moveStartTime = System.currentTimeMillis();
+                scoringNode.resetEvaluationTracker(depth);
+                if (bestMove == null) {
+                    negamax = scoringNode.negamax(
+                            depth,
+                            -Score.INFINITY,
+                            Score.INFINITY
+                    );
+                } else {
+                    negamax = aspirationSearch(depth, negamax);
+                }
+                if (timeManager.isStopped()) {
+                    // the iteration is incomplete, so its result means nothing
+                    return;
+                }
+                bestMove = searchResult();
+                assert negamax == bestMove.getScore();
+                Move[] lines = searchLines(bestMove, depth);
+                if (lines == null) {
+                    return;
+                }
+                recordResult(lines, depth);
+
+                if (id == 0) {
+                    System.out.format("\tMove time: %.3f, Total time: %.3f\n",
+                            (System.currentTimeMillis() - moveStartTime)/1000.0,
+                            (System.currentTimeMillis() - startTime)/1000.0);
+                    System.out.format("\tLeaf-nodes searched: %d\n",
+                            bestMove.getEvaluationTracker().getLeafNodes());
+                    System.out.format("\tTranspositions     : %d\n",
+                            bestMove.getEvaluationTracker().getTranspositions());
+                }
+                depth++;
+            }
+        }
+
+        // the root's best move, unpacked onto the actual game board
+        private Move searchResult() {
+            Move result = Move.unpack(
+                    originalNode.board, scoringNode.getBestMove());
+            result.setScore(scoringNode.getBestValue());
+            result.setSuccessor(scoringNode.predictedReplies());
+            result.setEvaluationTracker(scoringNode.getEvaluationTracker());
+            return result;
+        }
+
+        /* 'best' followed by the next best moves at this depth, up to
+           numLines of them, or null if the search was stopped first */
+        private Move[] searchLines(Move best, int depth) {
+            Move[] lines = new Move[numLines];
+            lines[0] = best;
+            int numFound = 1;
+            int[] excluded = new int[numLines];
+            while (numFound < numLines) {
+                excluded[numFound - 1] = lines[numFound - 1].packed;
+                scoringNode.excludeRootMoves(
+                        Arrays.copyOf(excluded, numFound));
+                // the next best could be anywhere below the last, so the
+                // window is full
+                scoringNode.negamax(depth, -Score.INFINITY, Score.INFINITY);
+                if (timeManager.isStopped()) {
+                    scoringNode.excludeRootMoves();
+                    return null;
+                }
+                if (scoringNode.getBestMove() == PackedMove.NONE) {
+                    // every move has been found
+                    break;
+                }
+                lines[numFound++] = searchResult();
+            }
+            scoringNode.excludeRootMoves();
+            return Arrays.copyOf(lines, numFound);
+        }
+
+        /* the value usually changes little from one depth to the next, so
+           search a narrow window around the last one, where more is pruned.
+           A value outside the window is only a bound, so widen that side and
+           search again until the value lands inside */
+        private int aspirationSearch(int depth, int previous) {
+            long delta = ASPIRATION_WINDOW;
+            int alpha = clamp(previous - delta);
+            int beta = clamp(previous + delta);
+            while (true) {
+                int value = scoringNode.negamax(depth, alpha, beta);
+                if (timeManager.isStopped()) {
+                    return value;
+                }
+                if (value <= alpha && alpha > -Score.INFINITY) {
+                    delta *= 2;
+                    alpha = clamp(value - delta);
+                } else if (value >= beta && beta < Score.INFINITY) {
+                    delta *= 2;
+                    beta = clamp(value + delta);
+                } else {
+                    return value;
+                }
+            }
+        }
+
+        private int clamp(long value) {
+            return (int) Math.max(-Score.INFINITY,
+                    Math.min(Score.INFINITY, value));
+        }
+    }
 }
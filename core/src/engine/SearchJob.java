@@ -0,0 +1,84 @@
+package engine;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/* A Scorer run on a thread of its own, so that a UI can keep drawing while
+   the engine thinks. While it runs, the result of the deepest search
+   finished so far can be shown; once done, its moves are bound to the board
+   it searched, usually a copy, so are re-bound before being made */
+public class SearchJob {
+    private final Scorer scorer;
+    private final CompletableFuture<List<Move>> result = new CompletableFuture<>();
+
+    public SearchJob(Scorer scorer) {
+        this.scorer = scorer;
+        startThread(() -> {
+            try {
+                result.complete(scorer.getBestMoves());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+    }
+
+    /* starts a thread for a search; every search thread is a daemon, as an
+       abandoned search mustn't keep the application running */
+    static Thread startThread(Runnable search) {
+        Thread thread = new Thread(search);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    public boolean isDone() {
+        return result.isDone();
+    }
+
+    // completes with the best moves, best first, e.g. to attach a callback
+    public CompletableFuture<List<Move>> getResult() {
+        return result;
+    }
+
+    /* the best move, or null if there were no moves or the search failed;
+       waits until done */
+    public Move getBestMove() {
+        List<Move> bestMoves = getBestMoves();
+        return bestMoves.isEmpty() ? null : bestMoves.get(0);
+    }
+
+    // empty if the search failed, which is logged rather than rethrown, as
+    // this is usually called on a UI thread that mustn't go down with it
+    public List<Move> getBestMoves() {
+        try {
+            List<Move> bestMoves = result.join();
+            return bestMoves != null ? bestMoves : Collections.emptyList();
+        } catch (CompletionException | CancellationException e) {
+            System.out.println("The search failed:");
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+
+    // best move of the deepest search finished so far, null before the first
+    public Move getProgress() {
+        return scorer.getBestMoveSoFar();
+    }
+
+    public int getDepth() {
+        return scorer.getDepthSoFar();
+    }
+
+    public void ponderHit() {
+        scorer.ponderHit();
+    }
+
+    // stops the search and waits for it, whose result is then meaningless
+    public void cancel() {
+        scorer.stop();
+        result.exceptionally(e -> null).join();
+    }
+}
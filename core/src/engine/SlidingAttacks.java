@@ -0,0 +1,119 @@
+package engine;
+
+/* Magic bitboard attack tables for Rooks, Bishops and Queens. For each square
+   the blockers that matter are masked out of the occupancy, multiplied by a
+   magic number and shifted to give a perfect-hash index into a table of
+   precomputed attack sets, which are filled in once at class-load */
+public final class SlidingAttacks {
+    // found by a seeded random search, for the square indexing of Bitboard
+    private static final long[] ROOK_MAGICS = new long[]{
+            0x8600104082002102L, 0x00C0011000200040L, 0x4080200080081000L,
+            0x8100100100082004L, 0x0280180002040080L, 0x0100040001000802L,
+            0x0080008002000100L, 0x0200010022104084L, 0x4411800040002080L,
+            0x428080200080400CL, 0x4110808010002000L, 0x0900800800801006L,
+            0x0100800400800800L, 0x0002000410080200L, 0x3041000401000200L,
+            0xA002000084012042L, 0xC000208000804004L, 0x0020004010004029L,
+            0x0010028020008012L, 0x0250008010080080L, 0x0040808008000400L,
+            0x0010808004000201L, 0x8100040002018810L, 0x0000020000804114L,
+            0x1088400480008020L, 0x5440100020080020L, 0x880301910040A000L,
+            0x2200100080080080L, 0x0490040080080080L, 0x1004008080020004L,
+            0x0081002900041200L, 0x001C01020024428CL, 0x9000804010800028L,
+            0x0230102001400042L, 0x1000820146001122L, 0x6050008008080100L,
+            0x2000080080800400L, 0x0412002452001008L, 0x0200015004000208L,
+            0x0021000083000142L, 0x0800400180A98008L, 0x1102004081020024L,
+            0x9000200010008080L, 0x0030001008008080L, 0xC040280100050030L,
+            0x000E020004008080L, 0x0200100108040002L, 0x100006410982002CL,
+            0x0000408001002500L, 0x2B02403106008200L, 0x0000102000410100L,
+            0x4100080010008280L, 0x0081004800300500L, 0x1204010002004040L,
+            0x0001002402001100L, 0x040C308044010200L, 0x000A030020104482L,
+            0x0000804013002602L, 0x2200201008804202L, 0x2004209001000409L,
+            0x0016000820041002L, 0x8022000104100802L, 0x020800820110281CL,
+            0x20000A2100441082L
+    };
+    private static final long[] BISHOP_MAGICS = new long[]{
+            0x0520040408002424L, 0x1020048122002208L, 0x00900C1090284200L,
+            0x1182208204104012L, 0x12040B08004000B5L, 0x0241042004990000L,
+            0x3012021042084805L, 0x0010208200904000L, 0x002004A008114103L,
+            0x0710915101040480L, 0x0014122082020002L, 0x10810C4100200200L,
+            0x0130011040020040L, 0x0002020184204000L, 0x0001022804040400L,
+            0x60420101088A200EL, 0x0008040408900400L, 0x0002490802140420L,
+            0x3002000400220A00L, 0x0008000688210080L, 0x0202000400A20300L,
+            0x0241010880A00112L, 0x0404100201048240L, 0x01C4208080841002L,
+            0x00184000A0328280L, 0x0004140022880840L, 0x400804190808A0E0L,
+            0x0004040190401080L, 0x0050840020802000L, 0x840042002D01010CL,
+            0x10820A2108880100L, 0xC044070010308211L, 0x0042209084041000L,
+            0x0002511420305005L, 0x8001080100281040L, 0x2102008020420200L,
+            0x0000410040040040L, 0x200A080108020280L, 0x00410C4400008210L,
+            0x0014008084120060L, 0x40408404C0082040L, 0x0244042203180806L,
+            0xC000220030044200L, 0x1140060102402400L, 0x0508080103105404L,
+            0x4001200806422080L, 0x00200800A9000080L, 0xE010390041004090L,
+            0x1003109010294000L, 0x4300820101200880L, 0x801C320100882011L,
+            0x000C000C84042000L, 0xA0100110E0220000L, 0x040C400408008600L,
+            0x08A0049002004201L, 0x0820024A06023004L, 0x22014044040940C1L,
+            0x0004408200902420L, 0x2040401426151008L, 0x5000001854208809L,
+            0x0010010120204120L, 0x00000010A0018100L, 0x02200405103E020CL,
+            0x00030448C2040108L
+    };
+    private static final long[] ROOK_MASKS = new long[64];
+    private static final long[] BISHOP_MASKS = new long[64];
+    private static final int[] ROOK_SHIFTS = new int[64];
+    private static final int[] BISHOP_SHIFTS = new int[64];
+    private static final long[][] ROOK_TABLE = new long[64][];
+    private static final long[][] BISHOP_TABLE = new long[64][];
+
+    static {
+        long edges = Bitboard.ROWS[0] | Bitboard.ROWS[7] |
+                     Bitboard.FILES[0] | Bitboard.FILES[7];
+        for (int square = 0; square < 64; square++) {
+            int row = Bitboard.row(square);
+            int col = Bitboard.col(square);
+            // blockers on the final square of a ray can't hide anything
+            ROOK_MASKS[square] = Bitboard.rookAttacks(square, 0) & ~(
+                    (Bitboard.ROWS[0] & ~Bitboard.ROWS[row]) |
+                    (Bitboard.ROWS[7] & ~Bitboard.ROWS[row]) |
+                    (Bitboard.FILES[0] & ~Bitboard.FILES[col]) |
+                    (Bitboard.FILES[7] & ~Bitboard.FILES[col]));
+            BISHOP_MASKS[square] = Bitboard.bishopAttacks(square, 0) & ~edges;
+            ROOK_SHIFTS[square] = 64 - Bitboard.count(ROOK_MASKS[square]);
+            BISHOP_SHIFTS[square] = 64 - Bitboard.count(BISHOP_MASKS[square]);
+            ROOK_TABLE[square] = buildTable(square, true);
+            BISHOP_TABLE[square] = buildTable(square, false);
+        }
+    }
+
+    private SlidingAttacks() {}
+
+    public static long rookAttacks(int square, long occupied) {
+        int index = (int) (((occupied & ROOK_MASKS[square]) *
+                ROOK_MAGICS[square]) >>> ROOK_SHIFTS[square]);
+        return ROOK_TABLE[square][index];
+    }
+
+    public static long bishopAttacks(int square, long occupied) {
+        int index = (int) (((occupied & BISHOP_MASKS[square]) *
+                BISHOP_MAGICS[square]) >>> BISHOP_SHIFTS[square]);
+        return BISHOP_TABLE[square][index];
+    }
+
+    public static long queenAttacks(int square, long occupied) {
+        return rookAttacks(square, occupied) | bishopAttacks(square, occupied);
+    }
+
+    private static long[] buildTable(int square, boolean rook) {
+        long mask = rook ? ROOK_MASKS[square] : BISHOP_MASKS[square];
+        long magic = rook ? ROOK_MAGICS[square] : BISHOP_MAGICS[square];
+        int shift = rook ? ROOK_SHIFTS[square] : BISHOP_SHIFTS[square];
+        long[] table = new long[1 << (64 - shift)];
+        // enumerate every subset of the mask and store its (slow) attacks
+        long subset = 0;
+        do {
+            long attacks = rook ? Bitboard.rookAttacks(square, subset) :
+                                  Bitboard.bishopAttacks(square, subset);
+            int index = (int) ((subset * magic) >>> shift);
+            assert table[index] == 0 || table[index] == attacks;
+            table[index] = attacks;
+            subset = (subset - mask) & mask;
+        } while (subset != 0);
+        return table;
+    }
+}
@@ -0,0 +1,190 @@
+package engine;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/* Deterministic parallel search, for analysis where Lazy SMP's varying
+   results are a problem. Nodes at least MIN_SPLIT_DEPTH from the horizon
+   search their first move serially, then split the remaining moves (the
+   young brothers) across fork/join workers, each on its own copy of the
+   board. Siblings start from the best alpha found so far, and a cutoff
+   cancels the siblings still running.
+
+   Transposition table values are neither used nor stored, so the value of
+   the root, and the first move in order to reach it, are the same however
+   the work is scheduled. Only the number of nodes searched varies, as it
+   does with the move ordering tables a sibling picks up: rather than each
+   allocating its own, siblings take them from a pool and return them when
+   done, keeping the history they learned.
+
+   Usage: SplitSearch [--threads n] depth [fen] */
+public class SplitSearch {
+    public static final int MIN_SPLIT_DEPTH = 3;
+    private final ForkJoinPool pool;
+    // move ordering tables not in use by any sibling
+    private final Queue<MoveOrdering> orderings = new ConcurrentLinkedQueue<>();
+    private volatile Split rootSplit;
+
+    public SplitSearch(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    // the root after a search to exactly this depth, holding the best move
+    public Node search(Board board, int depth) {
+        rootSplit = new Split(null, orderings, -Score.INFINITY, 0);
+        Node root = new Node(new Board(board), rootSplit);
+        root.resetEvaluationTracker(depth);
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                root.negamax(depth, -Score.INFINITY, Score.INFINITY);
+            }
+        });
+        return root;
+    }
+
+    // abandons the current search, its result is then meaningless
+    public void stop() {
+        if (rootSplit != null) {
+            rootSplit.cutoff = true;
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /* searches every move in 'siblings' from the node of 'parent' at 'ply'
+       in parallel, and returns the best of their values as negamax would */
+    static int searchSiblings(Node parent, int ply, int[] siblings, int depth,
+                              int alpha, int beta) {
+        /* at the root, a sibling equal to the best so far must still return
+           its exact value, so the tie goes to the first in order */
+        int margin = ply == 0 ? 1 : 0;
+        Split split = new Split(parent.getSplit(), parent.getSplit().orderings,
+                alpha, margin);
+        SiblingTask[] tasks = new SiblingTask[siblings.length];
+        for (int i = 0; i < siblings.length; i++) {
+            tasks[i] = new SiblingTask(parent, ply, siblings[i], depth, beta,
+                    split);
+        }
+        RecursiveAction.invokeAll(tasks);
+        int best = -Score.INFINITY;
+        // in move order, so results don't depend on which finished first
+        for (SiblingTask task : tasks) {
+            if (task.child != null) {
+                parent.getEvaluationTracker().add(
+                        task.child.getEvaluationTracker());
+            }
+            if (task.completed && task.value > best) {
+                best = task.value;
+                if (best > alpha) {
+                    parent.updatePrediction(ply, task.move, best, task.child);
+                }
+            }
+        }
+        return best;
+    }
+
+    // state shared by the siblings searched in parallel below one node
+    static final class Split {
+        private final Split parent;
+        private final Queue<MoveOrdering> orderings;
+        // siblings are searched with alpha this far below the best so far
+        private final int margin;
+        private volatile int alpha;
+        // a sibling failed high, so the others needn't finish
+        private volatile boolean cutoff = false;
+
+        private Split(Split parent, Queue<MoveOrdering> orderings, int best,
+                      int margin) {
+            this.parent = parent;
+            this.orderings = orderings;
+            this.margin = margin;
+            this.alpha = Math.max(best - margin, -Score.INFINITY);
+        }
+
+        boolean isCancelled() {
+            return cutoff || (parent != null && parent.isCancelled());
+        }
+
+        private synchronized void raiseAlpha(int value) {
+            if (value - margin > alpha) {
+                alpha = value - margin;
+            }
+        }
+    }
+
+    private static final class SiblingTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Node parent;
+        private final int ply;
+        private final int move;
+        private final int depth;
+        private final int beta;
+        private final Split split;
+        private Node child;
+        private int value;
+        private boolean completed = false;
+
+        private SiblingTask(Node parent, int ply, int move, int depth, int beta,
+                            Split split) {
+            this.parent = parent;
+            this.ply = ply;
+            this.move = move;
+            this.depth = depth;
+            this.beta = beta;
+            this.split = split;
+        }
+
+        @Override
+        protected void compute() {
+            if (split.isCancelled()) {
+                return;
+            }
+            // the parent's board stays put while its thread waits for us
+            Board board = new Board(parent.board);
+            board.makeMove(move);
+            MoveOrdering ordering = split.orderings.poll();
+            if (ordering == null) {
+                ordering = new MoveOrdering(Node.MAX_PLY);
+            }
+            child = new Node(parent, board, ply + 1, move, split, ordering);
+            value = -child.negamax(depth - 1, -beta, -split.alpha);
+            // the parent only needs the child's line and statistics
+            split.orderings.add(ordering);
+            if (split.isCancelled()) {
+                return;
+            }
+            completed = true;
+            split.raiseAlpha(value);
+            if (value >= beta) {
+                split.cutoff = true;
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        CommandLine commandLine = new CommandLine(args);
+        int numThreads = commandLine.threads();
+        if (!commandLine.hasNext()) {
+            System.out.println("Usage: SplitSearch [--threads n] depth [fen]");
+            System.exit(1);
+        }
+        int depth = Integer.parseInt(commandLine.next());
+        Board board = new Board(commandLine.fen());
+        SplitSearch search = new SplitSearch(numThreads);
+        long startTime = System.nanoTime();
+        Node root = search.search(board, depth);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        search.shutdown();
+        EvaluationTracker ET = root.getEvaluationTracker();
+        System.out.format("Best move: %s, value %d\n",
+                PackedMove.toString(root.getBestMove()), root.getBestValue());
+        System.out.format("Leaf-nodes searched: %d, evaluations: %d\n",
+                ET.getLeafNodes(), ET.getEvaluations());
+        System.out.format("%.3fs with %d threads\n", seconds, numThreads);
+    }
+}
@@ -4,9 +4,17 @@ package engine;
 import com.chessbot.ChessGame;
 
 public class Square {
+    // shared instances, indexed as in Bitboard
+    private static final Square[] squares = new Square[64];
     public final byte row;
     public final byte col;
 
+    static {
+        for (int i = 0; i < 64; i++) {
+            squares[i] = new Square(Bitboard.row(i), Bitboard.col(i));
+        }
+    }
+
     public Square(int row, int col) {
         assert 0 <= row && row < 8;
         assert 0 <= col && col < 8;
@@ -31,6 +39,14 @@ public class Square {
         return new Point(x, y);
     }
 
+    public static Square at(int index) {
+        return squares[index];
+    }
+
+    public int index() {
+        return Bitboard.index(row, col);
+    }
+
     public int colDiff(Square other) {
         return Math.abs(col - other.col);
     }
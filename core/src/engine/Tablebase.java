@@ -0,0 +1,403 @@
+package engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/* Endgame tablebases: for every position with a given few pieces, whether
+   the side to move wins, draws or loses, and in how many plies the mate
+   comes with best play. TablebaseGenerator makes them and writes them to
+   one file; once loaded, the search looks these positions up instead of
+   searching them.
+
+   Each table covers one set of material, named like KQvKR with white's
+   pieces first. The other colouring, KRvKQ, is looked up with the board
+   turned round. A table holds a byte per position: 0 for a draw, else one
+   more than the plies to mate, which are odd when the side to move gives
+   the mate and even when it is mated. Positions are indexed by the side to
+   move and each piece's square, with the white King kept to files a-d by
+   mirroring the board, and to rows 4-7 (ranks 1-4) too without pawns.
+
+   Tables know nothing of castling, en passant or the fifty-move rule, so
+   positions where those could matter aren't looked up */
+public class Tablebase {
+    public static final String DEFAULT_FILE = "tablebase.bin";
+    // returned by probe for positions no table covers
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+    public static final int MAX_PIECES = 4;
+    // halfmove clock at which the game is drawn
+    private static final int FIFTY_MOVE_LIMIT = 50;
+    private static final int MAGIC = 0x43425442;
+    // order of the pieces after the Kings, in names and in indices
+    private static final int[] ORDER = new int[]{
+            Piece.QUEEN, Piece.ROOK, Piece.BISHOP, Piece.KNIGHT, Piece.PAWN
+    };
+    // by piece index
+    private static final char[] LETTERS = new char[]{'K', 'Q', 'B', 'N', 'R', 'P'};
+    private static final int[] VALUES = new int[]{0, 9, 3, 3, 5, 1};
+    // the tables the search uses, none until loaded
+    private static Tablebase loaded = null;
+
+    private final List<Table> tables = new ArrayList<>();
+    private int maxPieces = 0;
+
+    /* loads the tables in 'path' for searches to use; false if there is no
+       such file */
+    public static boolean load(String path) throws IOException {
+        if (!new File(path).exists()) {
+            return false;
+        }
+        Tablebase tablebase = new Tablebase();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(path + " is not a tablebase");
+            }
+            int numTables = in.readInt();
+            for (int i = 0; i < numTables; i++) {
+                Table table = new Table(in.readUTF());
+                if (in.readInt() != table.entries.length) {
+                    throw new IOException("Bad size for table " + table.name);
+                }
+                in.readFully(table.entries);
+                tablebase.add(table);
+            }
+        }
+        loaded = tablebase;
+        return true;
+    }
+
+    public void write(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(tables.size());
+            for (Table table : tables) {
+                out.writeUTF(table.name);
+                out.writeInt(table.entries.length);
+                out.write(table.entries);
+            }
+        }
+    }
+
+    void add(Table table) {
+        tables.add(table);
+        maxPieces = Math.max(maxPieces, table.numPieces);
+    }
+
+    Table getTable(String name) {
+        String canonical = new Table(name).name;
+        for (Table table : tables) {
+            if (table.name.equals(canonical)) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    List<Table> getTables() {
+        return tables;
+    }
+
+    /* value of the board's position to the side to move, 'ply' plies from
+       the root of a search, or UNKNOWN if no loaded table can be trusted
+       with it */
+    public static int probe(Board board, int ply) {
+        Tablebase tablebase = loaded;
+        if (tablebase == null || board.numPieces(Side.WHITE) +
+                board.numPieces(Side.BLACK) > tablebase.maxPieces ||
+                board.getEnPassantSquare() != -1 || canCastle(board)) {
+            return UNKNOWN;
+        }
+        int entry = tablebase.entry(board.getBitboards(Side.WHITE),
+                board.getBitboards(Side.BLACK),
+                board.getNextTurn() == Side.WHITE);
+        if (entry <= 0) {
+            return entry == 0 ? 0 : UNKNOWN;
+        }
+        int plies = entry - 1;
+        // the mate might not come before the game is drawn
+        if (board.getHalfmoveClock() + plies >= FIFTY_MOVE_LIMIT) {
+            return UNKNOWN;
+        }
+        return plies % 2 == 1 ? -Score.mated(ply + plies) :
+                Score.mated(ply + plies);
+    }
+
+    /* every legal move ranked by the tables, quickest win first and slowest
+       loss last, up to numLines of them, each scored and followed by the
+       best play after it. Null unless every move leads to a known position,
+       when the moves must be searched as usual */
+    public static Move[] bestMoves(Board board, int numLines) {
+        if (loaded == null || board.numPieces(Side.WHITE) +
+                board.numPieces(Side.BLACK) > loaded.maxPieces) {
+            return null;
+        }
+        List<Move> moves = board.getAllValidMoves();
+        for (Move move : moves) {
+            int value = valueOf(board, move.packed);
+            if (value == UNKNOWN) {
+                return null;
+            }
+            move.setScore(value);
+        }
+        moves.sort(Comparator.comparingInt(Move::getScore).reversed());
+        Move[] lines = new Move[Math.min(numLines, moves.size())];
+        for (int i = 0; i < lines.length; i++) {
+            Move move = moves.get(i);
+            move.setEvaluationTracker(new EvaluationTracker(0));
+            board.makeMove(move.packed);
+            move.setSuccessor(bestLine(board, lineLength(move.getScore())));
+            board.undoMove(move.packed);
+            lines[i] = move;
+        }
+        return lines;
+    }
+
+    // value of 'move' to the side making it, from the tables
+    private static int valueOf(Board board, int move) {
+        board.makeMove(move);
+        int value = board.noValidMoveExists() ? board.evaluate(1) :
+                probe(board, 1);
+        board.undoMove(move);
+        return value == UNKNOWN ? UNKNOWN : -value;
+    }
+
+    // the best play for up to 'length' moves, as Move objects
+    private static Move bestLine(Board board, int length) {
+        if (length <= 0 || board.noValidMoveExists()) {
+            return null;
+        }
+        Move best = null;
+        for (Move move : board.getAllValidMoves()) {
+            int value = valueOf(board, move.packed);
+            if (value == UNKNOWN) {
+                return null;
+            }
+            move.setScore(value);
+            if (best == null || value > best.getScore()) {
+                best = move;
+            }
+        }
+        board.makeMove(best.packed);
+        best.setSuccessor(bestLine(board, length - 1));
+        board.undoMove(best.packed);
+        return best;
+    }
+
+    // moves after one of this value until the mate, or just the reply
+    private static int lineLength(int value) {
+        return Score.isMate(value) ? Score.matePlies(value) - 1 : 1;
+    }
+
+    static char letter(int type) {
+        return LETTERS[type];
+    }
+
+    // whether either side may still castle, as far as the tables go
+    private static boolean canCastle(Board board) {
+        for (Side side : Side.values()) {
+            if (!board.getKing(side).isUnmoved()) {
+                continue;
+            }
+            for (Piece piece : board.getPieces(side)) {
+                if (piece instanceof Rook && !piece.hasBeenTaken() &&
+                        piece.isUnmoved()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /* the entry for a position, given each side's bitboards by piece index,
+       or -1 if no table covers it. Bare Kings are always a draw */
+    int entry(long[] white, long[] black, boolean whiteToMove) {
+        int whiteKey = materialKey(white);
+        int blackKey = materialKey(black);
+        if (whiteKey == 0 && blackKey == 0) {
+            return 0;
+        }
+        for (Table table : tables) {
+            if (table.whiteKey == whiteKey && table.blackKey == blackKey) {
+                return table.entries[table.index(white, black, whiteToMove,
+                        false)] & 0xFF;
+            } else if (table.whiteKey == blackKey &&
+                    table.blackKey == whiteKey) {
+                return table.entries[table.index(black, white, !whiteToMove,
+                        true)] & 0xFF;
+            }
+        }
+        return -1;
+    }
+
+    // the number of each kind of piece besides the King, 3 bits each
+    private static int materialKey(long[] pieces) {
+        int key = 0;
+        for (int i = 0; i < ORDER.length; i++) {
+            key |= Bitboard.count(pieces[ORDER[i]]) << (3 * i);
+        }
+        return key;
+    }
+
+    /* One table. Its pieces are numbered in index order: the white King,
+       the black King, then white's and black's others in ORDER */
+    static final class Table {
+        final String name;
+        final int whiteKey;
+        final int blackKey;
+        final int numPieces;
+        // by piece number
+        final int[] types;
+        final Side[] sides;
+        final boolean hasPawns;
+        final int kingSquares;
+        final byte[] entries;
+
+        // by name, e.g. KQvKR; the colours are swapped if need be so that
+        // white is the stronger side
+        Table(String name) {
+            String[] parts = name.toUpperCase().split("V");
+            if (parts.length != 2 || !parts[0].startsWith("K") ||
+                    !parts[1].startsWith("K")) {
+                throw new IllegalArgumentException("Bad material: " + name);
+            }
+            String white = sortPieces(parts[0]);
+            String black = sortPieces(parts[1]);
+            if (strength(black) > strength(white) ||
+                    (strength(black) == strength(white) &&
+                            black.compareTo(white) > 0)) {
+                String swap = white;
+                white = black;
+                black = swap;
+            }
+            this.name = white + "v" + black;
+            numPieces = white.length() + black.length();
+            if (numPieces > MAX_PIECES) {
+                throw new IllegalArgumentException("Too many pieces: " + name);
+            }
+            types = new int[numPieces];
+            sides = new Side[numPieces];
+            types[0] = Piece.KING;
+            sides[0] = Side.WHITE;
+            types[1] = Piece.KING;
+            sides[1] = Side.BLACK;
+            int n = 2;
+            for (int i = 1; i < white.length(); i++, n++) {
+                types[n] = typeOf(white.charAt(i));
+                sides[n] = Side.WHITE;
+            }
+            for (int i = 1; i < black.length(); i++, n++) {
+                types[n] = typeOf(black.charAt(i));
+                sides[n] = Side.BLACK;
+            }
+            whiteKey = key(Side.WHITE);
+            blackKey = key(Side.BLACK);
+            hasPawns = name.toUpperCase().replace("V", "").indexOf('P') >= 0;
+            kingSquares = hasPawns ? 32 : 16;
+            entries = new byte[size()];
+        }
+
+        int size() {
+            int size = 2 * kingSquares;
+            for (int i = 1; i < numPieces; i++) {
+                size *= 64;
+            }
+            return size;
+        }
+
+        /* index of a position, given the bitboards of the sides playing
+           white and black in this table, and whether the board has been
+           turned round to make them so */
+        int index(long[] white, long[] black, boolean whiteToMove,
+                  boolean turned) {
+            int turn = turned ? 56 : 0;
+            int king = Bitboard.first(white[Piece.KING]) ^ turn;
+            int mirror = Bitboard.col(king) > 3 ? 7 : 0;
+            if (!hasPawns && Bitboard.row(king ^ mirror) < 4) {
+                mirror ^= 56;
+            }
+            king ^= mirror;
+            int flip = turn ^ mirror;
+            int index = (whiteToMove ? 0 : 1) * kingSquares +
+                    (Bitboard.row(king) - (hasPawns ? 0 : 4)) * 4 +
+                    Bitboard.col(king);
+            index = index * 64 + (Bitboard.first(black[Piece.KING]) ^ flip);
+            index = addPieces(index, white, flip);
+            return addPieces(index, black, flip);
+        }
+
+        private static int addPieces(int index, long[] pieces, int flip) {
+            for (int type : ORDER) {
+                for (long bb = pieces[type]; bb != 0; bb &= bb - 1) {
+                    index = index * 64 + (Bitboard.first(bb) ^ flip);
+                }
+            }
+            return index;
+        }
+
+        /* the position at 'index', as the square of each piece number;
+           returns whether white is to move */
+        boolean decode(int index, int[] squares) {
+            for (int i = numPieces - 1; i >= 1; i--) {
+                squares[i] = index % 64;
+                index /= 64;
+            }
+            int king = index % kingSquares;
+            squares[0] = Bitboard.index(king / 4 + (hasPawns ? 0 : 4),
+                    king % 4);
+            return index / kingSquares == 0;
+        }
+
+        private int key(Side side) {
+            long[] pieces = new long[Piece.NUM_TYPES];
+            for (int i = 2; i < numPieces; i++) {
+                if (sides[i] == side) {
+                    pieces[types[i]] += Bitboard.bit(i);
+                }
+            }
+            // counts only, so any distinct bits will do
+            return materialKey(pieces);
+        }
+
+        private static String sortPieces(String pieces) {
+            StringBuilder sorted = new StringBuilder("K");
+            for (int type : ORDER) {
+                for (char c : pieces.substring(1).toCharArray()) {
+                    if (typeOf(c) == type) {
+                        sorted.append(c);
+                    }
+                }
+            }
+            if (sorted.length() != pieces.length()) {
+                throw new IllegalArgumentException("Bad pieces: " + pieces);
+            }
+            return sorted.toString();
+        }
+
+        private static int strength(String pieces) {
+            int strength = 0;
+            for (char c : pieces.toCharArray()) {
+                strength += VALUES[typeOf(c)];
+            }
+            return strength;
+        }
+
+        private static int typeOf(char letter) {
+            for (int type = 0; type < LETTERS.length; type++) {
+                if (LETTERS[type] == letter) {
+                    return type;
+                }
+            }
+            return -1;
+        }
+    }
+}
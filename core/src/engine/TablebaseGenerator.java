@@ -0,0 +1,424 @@
+package engine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/* Makes the tables for Tablebase by retrograde analysis. Mates are found
+   first, then each pass settles the positions one ply further from mate:
+   on odd passes, those with a move to a position already known to be lost,
+   which are won; on even passes, those whose every move leads to a position
+   already known to be won, which are lost. Whatever is left once passes
+   stop settling anything is drawn. A capture or promotion leaves the table
+   for a smaller one, so those are made first and looked up as they are.
+
+   Positions are independent within a pass, so each pass is split across
+   fork/join workers, and the passes are separated by joins. Moves are
+   generated straight from bitboards rather than a Board, as every position
+   of every table is visited many times. En passant is left out, like
+   castling, so tables with a pawn on each side can be wrong about positions
+   where it would be the only good move.
+
+   Usage: TablebaseGenerator [--threads n] [file [material...]]
+   e.g. TablebaseGenerator tablebase.bin KQvK KRvK KPvK KQvKR
+   Tables the given ones depend on are included in the file too */
+public class TablebaseGenerator {
+    private static final String[] DEFAULT_MATERIAL = new String[]{
+            "KQvK", "KRvK", "KPvK", "KQvKR", "KQvKP", "KRvKP", "KBNvK"
+    };
+    private static final int[] PROMOTIONS = new int[]{
+            Piece.QUEEN, Piece.ROOK, Piece.BISHOP, Piece.KNIGHT
+    };
+    // entries are bytes, with 0 for a draw
+    private static final int MAX_PLIES = 254;
+    // positions handed to a worker at a time
+    private static final int CHUNK_SIZE = 1 << 14;
+    // outcomes of a move: the position it leads to is lost or won, for the
+    // side then to move, in fewer plies than the current pass
+    private static final int ILLEGAL = 0;
+    private static final int LOSES = 1;
+    private static final int WINS = 2;
+    private static final int OTHER = 3;
+
+    private final Tablebase tablebase = new Tablebase();
+    private final ForkJoinPool pool;
+
+    public TablebaseGenerator(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /* generates the table for 'material', after any it depends on that
+       haven't been generated already */
+    public void generate(String material) {
+        Tablebase.Table table = new Tablebase.Table(material);
+        if (tablebase.getTable(table.name) != null) {
+            return;
+        }
+        for (String dependency : dependencies(table)) {
+            generate(dependency);
+        }
+        long startTime = System.currentTimeMillis();
+        // successors in the table itself are looked up as it fills in
+        tablebase.add(table);
+        boolean[] settled = new boolean[table.entries.length];
+        runPass(table, settled, 0);
+        int longestDependency = 0;
+        for (Tablebase.Table other : tablebase.getTables()) {
+            if (other != table) {
+                longestDependency = Math.max(longestDependency,
+                        longestMate(other));
+            }
+        }
+        int pass = 1;
+        int lastSettled = -1;
+        while (true) {
+            int numSettled = runPass(table, settled, pass);
+            // a capture can still lead to a mate further off than this
+            if (numSettled == 0 && lastSettled == 0 &&
+                    pass > longestDependency + 1) {
+                break;
+            }
+            if (pass == MAX_PLIES) {
+                throw new IllegalStateException(table.name + " is too deep");
+            }
+            lastSettled = numSettled;
+            pass++;
+        }
+        System.out.format("%s: %d positions, longest mate %d plies, %.1fs\n",
+                table.name, table.entries.length, longestMate(table),
+                (System.currentTimeMillis() - startTime) / 1000.0);
+    }
+
+    public void write(String path) throws IOException {
+        tablebase.write(path);
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // the tables a capture or promotion can lead to, except bare Kings
+    private static List<String> dependencies(Tablebase.Table table) {
+        List<String> dependencies = new ArrayList<>();
+        for (int i = 2; i < table.numPieces; i++) {
+            dependencies.add(name(table, -1, -1, i));
+            if (table.types[i] != Piece.PAWN) {
+                continue;
+            }
+            for (int promotion : PROMOTIONS) {
+                dependencies.add(name(table, i, promotion, -1));
+                // promoting with a capture
+                for (int j = 2; j < table.numPieces; j++) {
+                    if (table.sides[j] != table.sides[i]) {
+                        dependencies.add(name(table, i, promotion, j));
+                    }
+                }
+            }
+        }
+        dependencies.removeIf(name -> name.equals("KvK"));
+        return dependencies;
+    }
+
+    // the table's material with piece 'changed' now 'type', and 'removed' gone
+    private static String name(Tablebase.Table table, int changed, int type,
+                               int removed) {
+        StringBuilder white = new StringBuilder("K");
+        StringBuilder black = new StringBuilder("K");
+        for (int i = 2; i < table.numPieces; i++) {
+            if (i != removed) {
+                (table.sides[i] == Side.WHITE ? white : black).append(
+                        Tablebase.letter(i == changed ? type : table.types[i]));
+            }
+        }
+        return white + "v" + black;
+    }
+
+    private static int longestMate(Tablebase.Table table) {
+        int longest = 0;
+        for (byte entry : table.entries) {
+            longest = Math.max(longest, (entry & 0xFF) - 1);
+        }
+        return longest;
+    }
+
+    // runs one pass over every position, returns how many it settled
+    private int runPass(Tablebase.Table table, boolean[] settled, int pass) {
+        List<Callable<Integer>> chunks = new ArrayList<>();
+        for (int start = 0; start < table.entries.length; start += CHUNK_SIZE) {
+            int end = Math.min(start + CHUNK_SIZE, table.entries.length);
+            int chunkStart = start;
+            chunks.add(() -> new Worker(table, settled)
+                    .run(chunkStart, end, pass));
+        }
+        int numSettled = 0;
+        try {
+            for (Future<Integer> chunk : pool.invokeAll(chunks)) {
+                numSettled += chunk.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+        return numSettled;
+    }
+
+    // the positions of one chunk, with buffers of its own
+    private final class Worker {
+        private final Tablebase.Table table;
+        private final boolean[] settled;
+        private final int[] squares;
+        // the position, with the move being tried made on it
+        private final long[][] pieces = new long[2][Piece.NUM_TYPES];
+        private int pass;
+
+        private Worker(Tablebase.Table table, boolean[] settled) {
+            this.table = table;
+            this.settled = settled;
+            squares = new int[table.numPieces];
+        }
+
+        private int run(int start, int end, int pass) {
+            this.pass = pass;
+            int numSettled = 0;
+            for (int index = start; index < end; index++) {
+                if (settled[index]) {
+                    continue;
+                }
+                int result = pass == 0 ? classify(index) : search(index);
+                if (result != 0) {
+                    table.entries[index] = (byte) result;
+                    settled[index] = true;
+                    numSettled++;
+                }
+            }
+            return numSettled;
+        }
+
+        /* pass 0: settles mates, and positions that can't happen or are
+           stalemate, which are left as draws */
+        private int classify(int index) {
+            Side toMove = decode(index);
+            if (toMove == null ||
+                    isAttacked(king(toMove.opponent()), toMove, pieces)) {
+                settled[index] = true;
+                return 0;
+            }
+            if (forEachMove(toMove) == 0) {
+                settled[index] = true;
+                // mated now
+                return isAttacked(king(toMove), toMove.opponent(), pieces) ?
+                        1 : 0;
+            }
+            return 0;
+        }
+
+        // later passes: the entry for a position settled by this one, or 0
+        private int search(int index) {
+            Side toMove = decode(index);
+            return forEachMove(toMove) < 0 ? pass + 1 : 0;
+        }
+
+        /* tries every legal move. In pass 0 returns how many there are; in
+           an odd pass, -1 if one wins, and in an even pass, -1 if they all
+           lose, else 0 */
+        private int forEachMove(Side toMove) {
+            long[] own = pieces[toMove.ordinal()];
+            long[] theirs = pieces[toMove.opponent().ordinal()];
+            long ownOccupied = occupancy(own);
+            long theirOccupied = occupancy(theirs);
+            long occupied = ownOccupied | theirOccupied;
+            int numMoves = 0;
+            for (int type = 0; type < Piece.NUM_TYPES; type++) {
+                for (long bb = own[type]; bb != 0; bb &= bb - 1) {
+                    int from = Bitboard.first(bb);
+                    long targets;
+                    if (type == Piece.PAWN) {
+                        targets = pawnTargets(toMove, from, occupied,
+                                theirOccupied);
+                    } else {
+                        targets = attacks(type, from, occupied) & ~ownOccupied;
+                    }
+                    for (; targets != 0; targets &= targets - 1) {
+                        int to = Bitboard.first(targets);
+                        boolean promotes = type == Piece.PAWN &&
+                                (Bitboard.row(to) == 0 || Bitboard.row(to) == 7);
+                        for (int promotion : PROMOTIONS) {
+                            int outcome = tryMove(toMove, type, from, to,
+                                    promotes ? promotion : type);
+                            if (outcome != ILLEGAL) {
+                                numMoves++;
+                                if (pass % 2 == 1 && outcome == LOSES) {
+                                    return -1;
+                                } else if (pass > 0 && pass % 2 == 0 &&
+                                        outcome != WINS) {
+                                    return 0;
+                                }
+                            }
+                            if (!promotes) {
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+            if (pass == 0) {
+                return numMoves;
+            }
+            // an odd pass found no win; in an even pass every move lost
+            return pass % 2 == 1 ? 0 : -1;
+        }
+
+        // makes the move on 'pieces', looks up the result, and takes it back
+        private int tryMove(Side toMove, int type, int from, int to,
+                            int placed) {
+            long[] own = pieces[toMove.ordinal()];
+            long[] theirs = pieces[toMove.opponent().ordinal()];
+            long fromBit = Bitboard.bit(from);
+            long toBit = Bitboard.bit(to);
+            int taken = -1;
+            for (int i = 0; i < Piece.NUM_TYPES; i++) {
+                if ((theirs[i] & toBit) != 0) {
+                    taken = i;
+                    theirs[i] ^= toBit;
+                }
+            }
+            own[type] ^= fromBit;
+            own[placed] |= toBit;
+            int outcome = outcome(toMove, taken < 0 && placed == type);
+            own[placed] ^= toBit;
+            own[type] |= fromBit;
+            if (taken >= 0) {
+                theirs[taken] |= toBit;
+            }
+            return outcome;
+        }
+
+        private int outcome(Side toMove, boolean sameMaterial) {
+            if (isAttacked(king(toMove), toMove.opponent(), pieces)) {
+                return ILLEGAL;
+            }
+            // only the number of moves matters in pass 0
+            if (pass == 0) {
+                return OTHER;
+            }
+            long[] white = pieces[Side.WHITE.ordinal()];
+            long[] black = pieces[Side.BLACK.ordinal()];
+            boolean whiteToMove = toMove.opponent() == Side.WHITE;
+            int entry = sameMaterial ?
+                    table.entries[table.index(white, black, whiteToMove,
+                            false)] & 0xFF :
+                    tablebase.entry(white, black, whiteToMove);
+            if (entry < 0) {
+                throw new IllegalStateException("No table after a move");
+            }
+            int plies = entry - 1;
+            if (entry == 0 || plies >= pass) {
+                return OTHER;
+            }
+            return plies % 2 == 0 ? LOSES : WINS;
+        }
+
+        // fills in 'pieces'; returns who is to move, or null if impossible
+        private Side decode(int index) {
+            boolean whiteToMove = table.decode(index, squares);
+            for (long[] side : pieces) {
+                Arrays.fill(side, 0);
+            }
+            long occupied = 0;
+            for (int i = 0; i < table.numPieces; i++) {
+                long bit = Bitboard.bit(squares[i]);
+                int row = Bitboard.row(squares[i]);
+                if ((occupied & bit) != 0 || (table.types[i] == Piece.PAWN &&
+                        (row == 0 || row == 7))) {
+                    return null;
+                }
+                occupied |= bit;
+                pieces[table.sides[i].ordinal()][table.types[i]] |= bit;
+            }
+            return whiteToMove ? Side.WHITE : Side.BLACK;
+        }
+
+        private int king(Side side) {
+            return Bitboard.first(pieces[side.ordinal()][Piece.KING]);
+        }
+    }
+
+    private static long pawnTargets(Side side, int from, long occupied,
+                                    long theirOccupied) {
+        // white pawns move towards row 0, black pawns towards row 7
+        int step = side == Side.WHITE ? -8 : 8;
+        int startRow = side == Side.WHITE ? 6 : 1;
+        long targets = Bitboard.PAWN_ATTACKS[side.ordinal()][from] &
+                theirOccupied;
+        int to = from + step;
+        if ((occupied & Bitboard.bit(to)) == 0) {
+            targets |= Bitboard.bit(to);
+            if (Bitboard.row(from) == startRow &&
+                    (occupied & Bitboard.bit(to + step)) == 0) {
+                targets |= Bitboard.bit(to + step);
+            }
+        }
+        return targets;
+    }
+
+    private static long attacks(int type, int square, long occupied) {
+        switch (type) {
+            case Piece.KING:
+                return Bitboard.KING_ATTACKS[square];
+            case Piece.QUEEN:
+                return SlidingAttacks.queenAttacks(square, occupied);
+            case Piece.BISHOP:
+                return SlidingAttacks.bishopAttacks(square, occupied);
+            case Piece.KNIGHT:
+                return Bitboard.KNIGHT_ATTACKS[square];
+            case Piece.ROOK:
+                return SlidingAttacks.rookAttacks(square, occupied);
+            default:
+                throw new IllegalArgumentException("Not a piece: " + type);
+        }
+    }
+
+    // whether 'square' is attacked by side 'by' among 'pieces'
+    private static boolean isAttacked(int square, Side by, long[][] pieces) {
+        long[] attackers = pieces[by.ordinal()];
+        long occupied = occupancy(pieces[0]) | occupancy(pieces[1]);
+        return (Bitboard.KNIGHT_ATTACKS[square] & attackers[Piece.KNIGHT]) != 0 ||
+                (Bitboard.KING_ATTACKS[square] & attackers[Piece.KING]) != 0 ||
+                (Bitboard.PAWN_ATTACKS[by.opponent().ordinal()][square] &
+                        attackers[Piece.PAWN]) != 0 ||
+                (SlidingAttacks.rookAttacks(square, occupied) &
+                        (attackers[Piece.ROOK] | attackers[Piece.QUEEN])) != 0 ||
+                (SlidingAttacks.bishopAttacks(square, occupied) &
+                        (attackers[Piece.BISHOP] | attackers[Piece.QUEEN])) != 0;
+    }
+
+    private static long occupancy(long[] pieces) {
+        long occupied = 0;
+        for (long bb : pieces) {
+            occupied |= bb;
+        }
+        return occupied;
+    }
+
+    public static void main(String[] args) throws IOException {
+        CommandLine commandLine = new CommandLine(args);
+        int numThreads = commandLine.threads();
+        String path = commandLine.hasNext() ? commandLine.next() :
+                Tablebase.DEFAULT_FILE;
+        String[] material = commandLine.hasNext() ? commandLine.rest() :
+                DEFAULT_MATERIAL;
+        TablebaseGenerator generator = new TablebaseGenerator(numThreads);
+        long startTime = System.currentTimeMillis();
+        for (String name : material) {
+            generator.generate(name);
+        }
+        generator.shutdown();
+        generator.write(path);
+        System.out.format("Wrote %s in %.1fs with %d threads\n", path,
+                (System.currentTimeMillis() - startTime) / 1000.0, numThreads);
+    }
+}
@@ -0,0 +1,107 @@
+package engine;
+
+/* Decides when a search should stop. Each search gets two limits: once an
+   iteration of iterative deepening finishes past the soft limit, starting
+   another isn't worth it, and at the hard limit the search is stopped
+   wherever it has got to. Both come from either a fixed time per move or a
+   share of the time left on a GameClock.
+
+   The soft limit shrinks once the best move has survived a few deeper
+   searches, and grows when it has just changed. Stopping is cooperative:
+   searching threads poll isStopped rather than being interrupted.
+
+   A search for pondering has no limits until ponderHit, and the time spent
+   until then counts towards them */
+public class TimeManager {
+    public static final long DEFAULT_MOVE_TIME_MILLIS = 5000;
+    // the clock is shared out as if this many moves were still to play
+    private static final int MOVES_TO_GO = 30;
+    // kept back on the clock for the time it takes to play the move
+    private static final long SAFETY_MARGIN_MILLIS = 50;
+    // the best move is trusted once it has lasted this many depths
+    private static final int STABLE_DEPTHS = 3;
+    private static long moveTimeMillis = DEFAULT_MOVE_TIME_MILLIS;
+
+    private final long startTime;
+    private final long softLimit;
+    private final long hardLimit;
+    private volatile boolean stopped = false;
+    private volatile boolean pondering = false;
+
+    // the configured time per move
+    public TimeManager() {
+        this(moveTimeMillis);
+    }
+
+    /* at most this long for the move; past half of it an iteration rarely
+       finishes before the rest runs out */
+    public TimeManager(long moveTimeMillis) {
+        startTime = System.currentTimeMillis();
+        hardLimit = moveTimeMillis;
+        softLimit = moveTimeMillis / 2;
+    }
+
+    // a share of the time left on the clock, which gets 'increment' per move
+    public TimeManager(long remainingMillis, long incrementMillis) {
+        startTime = System.currentTimeMillis();
+        long usable = Math.max(remainingMillis - SAFETY_MARGIN_MILLIS, 1);
+        // never risk more than half of what's left on one move
+        hardLimit = Math.min(
+                3 * (usable / MOVES_TO_GO + incrementMillis), usable / 2);
+        softLimit = Math.min(
+                usable / MOVES_TO_GO + incrementMillis * 3 / 4, hardLimit);
+    }
+
+    // time per move when no game clock is in use
+    public static void setMoveTime(long moveTimeMillis) {
+        if (moveTimeMillis <= 0) {
+            throw new IllegalArgumentException(
+                    "The time per move must be positive, not " +
+                    moveTimeMillis + "ms");
+        }
+        TimeManager.moveTimeMillis = moveTimeMillis;
+    }
+
+    // ignore the limits until ponderHit
+    public void ponder() {
+        pondering = true;
+    }
+
+    public void ponderHit() {
+        pondering = false;
+    }
+
+    /* whether to stop after an iteration has finished, given how many
+       depths in a row have had the same best move */
+    public boolean iterationsSuffice(int stableDepths) {
+        if (pondering) {
+            return false;
+        }
+        long limit = softLimit;
+        if (stableDepths >= STABLE_DEPTHS) {
+            limit /= 2;
+        } else if (stableDepths == 0) {
+            limit = limit * 3 / 2;
+        }
+        return elapsedMillis() >= Math.min(limit, hardLimit);
+    }
+
+    public long millisUntilHardLimit() {
+        if (pondering) {
+            return Long.MAX_VALUE;
+        }
+        return hardLimit - elapsedMillis();
+    }
+
+    public long elapsedMillis() {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+}
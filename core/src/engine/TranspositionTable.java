@@ -0,0 +1,103 @@
+package engine;
+
+import java.util.Arrays;
+
+/* Fixed-size transposition table, preallocated so its memory use is known up
+   front. Each entry is two longs: the packed data and the Zobrist key XORed
+   with that data. Threads read and write without locking; an entry torn by a
+   concurrent write no longer XORs back to its key, so it reads as a miss.
+
+   Entries are grouped in buckets of two: the first slot keeps the deepest
+   result of the current search, the second always takes the latest result,
+   so shallow entries near the leaves can't evict expensive ones.
+
+   Packed data, from the low bits: value (32), depth (8), bound (2),
+   best move (17), age (5). A bound of 0 marks an empty entry */
+public class TranspositionTable {
+    public static final int DEFAULT_SIZE_MB = 64;
+    public static final long MISS = 0;
+    public static final int UPPER_BOUND = 1;
+    public static final int LOWER_BOUND = 2;
+    public static final int EXACT = 3;
+    private static final int BYTES_PER_ENTRY = 16;
+    private static final int MAX_DEPTH = 0xFF;
+    private static final int AGES = 32;
+    private final long[] keys;
+    private final long[] data;
+    private final int bucketMask;
+    private int age = 0;
+
+    public TranspositionTable(int megabytes) {
+        long entries = (long) megabytes * 1024 * 1024 / BYTES_PER_ENTRY;
+        // largest power of two that fits, with at least one bucket
+        int size = (int) Math.max(2, Long.highestOneBit(
+                Math.min(entries, 1 << 30)));
+        keys = new long[size];
+        data = new long[size];
+        bucketMask = size / 2 - 1;
+    }
+
+    // packed data for this position, or MISS
+    public long probe(long key) {
+        int slot = ((int) key & bucketMask) << 1;
+        for (int i = slot; i <= slot + 1; i++) {
+            long entry = data[i];
+            if (entry != MISS && (keys[i] ^ entry) == key) {
+                return entry;
+            }
+        }
+        return MISS;
+    }
+
+    public void store(long key, int value, int depth, int bound, int bestMove) {
+        int slot = ((int) key & bucketMask) << 1;
+        long entry = pack(value, depth, bound, bestMove);
+        long deepest = data[slot];
+        if (deepest == MISS || (keys[slot] ^ deepest) == key ||
+                age(deepest) != age || depth >= depth(deepest)) {
+            keys[slot] = key ^ entry;
+            data[slot] = entry;
+        } else {
+            keys[slot + 1] = key ^ entry;
+            data[slot + 1] = entry;
+        }
+    }
+
+    private long pack(int value, int depth, int bound, int bestMove) {
+        return (value & 0xFFFFFFFFL) |
+                ((long) Math.min(depth, MAX_DEPTH) << 32) |
+                ((long) bound << 40) |
+                ((long) bestMove << 42) |
+                ((long) age << 59);
+    }
+
+    public static int value(long entry) {
+        return (int) entry;
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> 32) & MAX_DEPTH;
+    }
+
+    public static int bound(long entry) {
+        return (int) (entry >>> 40) & 3;
+    }
+
+    public static int bestMove(long entry) {
+        return (int) (entry >>> 42) & 0x1FFFF;
+    }
+
+    private static int age(long entry) {
+        return (int) (entry >>> 59) & (AGES - 1);
+    }
+
+    // entries stored before this call become the first to be replaced
+    public void newSearch() {
+        age = (age + 1) % AGES;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, MISS);
+    }
+}
@@ -3,33 +3,36 @@ package engine;
 import java.util.Random;
 
 public class ZobristTracker {
-    private static final int NUM_PIECE_TYPES = 6;
+    private static final int NUM_PIECE_TYPES = Piece.NUM_TYPES;
+    // shared by every board, so equal positions hash equally across boards
+    private static final long[][][] zTable =
+            new long[Board.SIZE][Board.SIZE][NUM_PIECE_TYPES*2];
+    private static final long[] enPassantKeys = new long[Board.SIZE];
+    private static final long BQCastle;
+    private static final long BKCastle;
+    private static final long WQCastle;
+    private static final long WKCastle;
+    private static final long turnKey;
     private final Board board;
-    private final long[][][] zTable;
-    private final long[] enPassantKeys;
-    private final long BQCastle;
-    private final long BKCastle;
-    private final long WQCastle;
-    private final long WKCastle;
-    private final long turnKey;
     private long incrementalVal;
 
-    public ZobristTracker(Board board) {
-        this.board = board;
+    static {
         Random random = new Random(0);
-        zTable = new long[Board.SIZE][Board.SIZE][NUM_PIECE_TYPES*2];
         populateZTable(random);
-        enPassantKeys = new long[Board.SIZE];
         populateEnPassantKeys(random);
         BQCastle = random.nextLong();
         BKCastle = random.nextLong();
         WQCastle = random.nextLong();
         WKCastle = random.nextLong();
         turnKey = random.nextLong();
+    }
+
+    public ZobristTracker(Board board) {
+        this.board = board;
         incrementalVal = 0;
     }
 
-    private void populateZTable(Random random) {
+    private static void populateZTable(Random random) {
         for (int i = 0; i < Board.SIZE; i++) {
             for (int j = 0; j < Board.SIZE; j++) {
                 for (int k = 0; k < NUM_PIECE_TYPES * 2; k++) {
@@ -39,12 +42,29 @@ public class ZobristTracker {
         }
     }
 
-    private void populateEnPassantKeys(Random random) {
+    private static void populateEnPassantKeys(Random random) {
         for (int i = 0; i < Board.SIZE; i++) {
             enPassantKeys[i] = random.nextLong();
         }
     }
 
+    /* hash the board from scratch, once it has been set up; from then on
+       moves update it incrementally. The same position then has the same
+       hash on every board, however it was reached */
+    public void recompute() {
+        incrementalVal = 0;
+        for (Side side : Side.values()) {
+            for (Piece piece : board.getPieces(side)) {
+                if (!piece.hasBeenTaken()) {
+                    update(piece.square(), piece);
+                }
+            }
+        }
+        if (board.getNextTurn() == Side.BLACK) {
+            updateTurn();
+        }
+    }
+
     public void update(Square square, Piece piece) {
         int pieceIndex = piece.pieceIndex +
                 (piece.side == Side.WHITE ? NUM_PIECE_TYPES : 0);
@@ -61,10 +81,8 @@ public class ZobristTracker {
     }
 
     private long enPassantPossibleHash() {
-        Move lastMove = board.getLastMove();
-        if (lastMove != null && lastMove.piece instanceof Pawn &&
-                lastMove.rowDiff() == 2) {
-            return enPassantKeys[lastMove.from.col];
+        if (board.getEnPassantSquare() != -1) {
+            return enPassantKeys[Bitboard.col(board.getEnPassantSquare())];
         } else {
             return 0;
         }
@@ -3,10 +3,68 @@ package com.chessbot;
 import com.badlogic.gdx.ApplicationListener;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3Application;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3ApplicationConfiguration;
+import engine.GameClock;
+import engine.Node;
+import engine.Ponderer;
+import engine.Scorer;
+import engine.Tablebase;
+import engine.TimeManager;
+
+import java.io.IOException;
 
 // Please note that on macOS your application needs to be started with the -XstartOnFirstThread JVM argument
 public class DesktopLauncher {
+	private static final String USAGE = "Usage: DesktopLauncher [--threads n] " +
+			"[--hash MB] [--clock minutes+seconds | --movetime seconds] " +
+			"[--no-ponder] [--tablebase file]";
+
 	public static void main (String[] arg) {
+		// e.g. --threads 4 to limit the search threads, all cores by default;
+		// --hash 256 for a 256MB transposition table, 64MB by default;
+		// --clock 5+3 for five minutes a side plus three seconds a move, or
+		// --movetime 2 for at most two seconds a move, five by default;
+		// --no-ponder to stop the bot thinking on its opponent's time;
+		// --tablebase file for endgame tables, tablebase.bin if it exists
+		String tablebaseFile = Tablebase.DEFAULT_FILE;
+		try {
+			for (int i = 0; i < arg.length; i++) {
+				if (arg[i].equals("--no-ponder")) {
+					Ponderer.setEnabled(false);
+				} else if (i + 1 == arg.length) {
+					break;
+				} else if (arg[i].equals("--threads")) {
+					Scorer.setNumThreads(Integer.parseInt(arg[i + 1]));
+				} else if (arg[i].equals("--hash")) {
+					Node.setTranspositionTableSize(Integer.parseInt(arg[i + 1]));
+				} else if (arg[i].equals("--clock")) {
+					String[] control = arg[i + 1].split("\\+");
+					GameClock.setTimeControl(
+							(long) (Double.parseDouble(control[0]) * 60000),
+							control.length > 1 ?
+									(long) (Double.parseDouble(control[1]) * 1000) : 0);
+				} else if (arg[i].equals("--movetime")) {
+					TimeManager.setMoveTime(
+							(long) (Double.parseDouble(arg[i + 1]) * 1000));
+				} else if (arg[i].equals("--tablebase")) {
+					tablebaseFile = arg[i + 1];
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			// including numbers that don't parse
+			System.out.println(e.getMessage());
+			System.out.println(USAGE);
+			System.exit(1);
+		}
+		try {
+			if (Tablebase.load(tablebaseFile)) {
+				System.out.println("Loaded tablebase " + tablebaseFile);
+			} else {
+				System.out.println("No tablebase at " + tablebaseFile +
+						", endgames will be searched");
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 		Lwjgl3ApplicationConfiguration config = new Lwjgl3ApplicationConfiguration();
 		config.setForegroundFPS(30);
 		config.setWindowedMode(ChessGame.WIDTH,ChessGame.HEIGHT);